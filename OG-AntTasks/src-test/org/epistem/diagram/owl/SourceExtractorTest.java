@@ -55,7 +55,20 @@ public class SourceExtractorTest extends TestCase {
         diagram.accept( extractor );
         
         Map<String, String> srcs = extractor.getFileSources();
-        assertEquals( srcs.get( "../src/bar.scm" ), "this is a test AA\nthis is a test 11\nthis is a\ntest A\nthis is a test 1\nA\nB\nC\n" );
-        assertEquals( srcs.get( "../src/foo.scm" ), "this is a test 2 B\nthis is a test 2\n" );
+        assertEquals( srcs.get( "../src/bar.scm" ), "this is a\ntest A\nthis is a test 1\nA\nB\nC\nthis is a test AA\nthis is a test 11\n" );
+        assertEquals( srcs.get( "../src/foo.scm" ), "this is a test 2\nthis is a test 2 B\n" );
+    }
+    
+    public void testSelectedPage() throws Exception {
+        SourceFileExtractor extractor = new SourceFileExtractor();
+        
+        OmniGraffleDoc doc = new OmniGraffleDoc( new File( "test-diagrams/test-src-extract.graffle" ) );
+        Diagram diagram = new Diagram( doc, Diagram.titled( "dup" ) );
+        assertEquals( 1, diagram.pages.size() );
+        diagram.accept( extractor );
+        
+        Map<String, String> srcs = extractor.getFileSources();
+        assertEquals( "this is a test AA\nthis is a test 11\n", srcs.get( "../src/bar.scm" ) );
+        assertEquals( "this is a test 2 B\n", srcs.get( "../src/foo.scm" ) );
     }
 }
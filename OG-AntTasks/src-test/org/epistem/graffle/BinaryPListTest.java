@@ -0,0 +1,142 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.epistem.diagram.model.Diagram;
+
+/**
+ * Test the binary plist writer and parser
+ *
+ * @author nickmain
+ */
+public class BinaryPListTest extends TestCase {
+
+    public void testValues() throws Exception {
+        Map<String,Object> dict = new HashMap<String, Object>();
+        dict.put( "small", 7 );
+        dict.put( "short", 300 );
+        dict.put( "int", 100000 );
+        dict.put( "negative", -5 );
+        dict.put( "long", 1L << 40 );
+        dict.put( "real", 2.5 );
+        dict.put( "yes", Boolean.TRUE );
+        dict.put( "no", Boolean.FALSE );
+        dict.put( "date", new Date( 1293840000000L ) );
+        dict.put( "ascii", "a string longer than fifteen chars" );
+        dict.put( "unicode", "caf\u00e9" );
+        dict.put( "empty", new ArrayList<Object>() );
+        dict.put( "list", Arrays.<Object>asList( "ShapedGraphic", "ShapedGraphic", 1, 1.0 ) );
+
+        Object parsed = roundTrip( dict );
+        assertEquals( dict, parsed );
+    }
+    
+    public void testDatesInOtherZones() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                     "<plist version=\"1.0\"><dict><key>date</key><date>2011-01-01T00:00:00Z</date></dict></plist>\n";
+        
+        TimeZone zone = TimeZone.getDefault();
+        TimeZone.setDefault( TimeZone.getTimeZone( "America/New_York" ) );
+        File file = File.createTempFile( "date", ".plist" );
+        try {
+            FileOutputStream out = new FileOutputStream( file );
+            out.write( xml.getBytes( "UTF-8" ) );
+            out.close();
+            
+            Map<String,Object> expected = new HashMap<String,Object>();
+            expected.put( "date", new Date( 1293840000000L ) );
+            
+            assertEquals( expected, PListPullParser.parse( file ) );
+            assertEquals( expected, PListParser.parse( file ) );
+            assertEquals( expected, PListParser.parse( file, PListParser.Mode.LAZY ) );
+            assertEquals( expected, roundTrip( PListPullParser.parse( file ) ) );
+        }
+        finally {
+            TimeZone.setDefault( zone );
+            file.delete();
+        }
+    }
+    
+    public void testData() throws Exception {
+        byte[] data = new byte[ 1000 ];
+        for( int i = 0; i < data.length; i++ ) data[i] = (byte) i;
+        
+        List<Object> list = new ArrayList<Object>();
+        list.add( data );
+        
+        List<?> parsed = (List<?>) roundTrip( list );
+        assertTrue( Arrays.equals( data, (byte[]) parsed.get( 0 ) ) );
+    }
+    
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPListWriter.write( Arrays.asList( "a", "b" ), out );
+        byte[] bytes = Arrays.copyOf( out.toByteArray(), 20 );
+        
+        try {
+            BinaryPListParser.parse( ByteBuffer.wrap( bytes ) );
+            fail( "truncated plist should not parse" );
+        }
+        catch( java.io.IOException ex ) {
+            //expected
+        }
+    }
+    
+    public void testDiagram() throws Exception {
+        File xml = new File( "test-diagrams/test-owl.graffle" );
+        File binary = File.createTempFile( "test-owl", ".graffle" );
+        
+        try {
+            Object plist = PListPullParser.parse( xml );
+            BinaryPListWriter.write( plist, binary );
+            
+            assertEquals( plist, PListPullParser.parse( binary ) );
+            assertEquals( plist, PListParser.parse( binary ) );
+            
+            Diagram diagram = new Diagram( new OmniGraffleDoc( binary ) );
+            assertEquals( new Diagram( new OmniGraffleDoc( xml ) ).pages.size(), diagram.pages.size() );
+        }
+        finally {
+            binary.delete();
+        }
+    }
+    
+    private Object roundTrip( Object plist ) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPListWriter.write( plist, out );
+        return BinaryPListParser.parse( ByteBuffer.wrap( out.toByteArray() ) );
+    }
+}
@@ -0,0 +1,162 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.epistem.graffle.PListByteParser.Laziness;
+
+/**
+ * Test the compact dicts and interned keys
+ *
+ * @author nickmain
+ */
+@SuppressWarnings("unchecked")
+public class CompactDictTest extends TestCase {
+
+    private static final String PLIST = 
+        "<plist version=\"1.0\"><array>" +
+        "<dict><key>Class</key><string>ShapedGraphic</string>" +
+        "<key> ID </key><integer>3</integer>" +
+        "<key>Style</key><dict><key>fill</key><dict><key>Draws</key><string>NO</string></dict></dict>" +
+        "<key>ID</key><integer>4</integer>" +
+        "<key>Empty</key><dict/></dict>" +
+        "<dict><key>Class</key><string>LineGraphic</string></dict>" +
+        "</array></plist>";
+    
+    public void testBuilder() {
+        CompactDict.Builder builder = new CompactDict.Builder();
+        
+        int outer = builder.start();
+        builder.put( "a", "1", outer );
+        
+        int inner = builder.start();
+        for( int i = 0; i < 100; i++ ) builder.put( "k" + i, i, inner );
+        Map<String,Object> nested = builder.build( inner );
+        
+        builder.put( "b", nested, outer );
+        builder.put( "a", "2", outer );
+        Map<String,Object> dict = builder.build( outer );
+        
+        assertEquals( 2, dict.size() );
+        assertEquals( "2", dict.get( "a" ) );
+        assertEquals( 100, nested.size() );
+        assertEquals( 57, nested.get( "k57" ) );
+        assertNull( dict.get( "c" ) );
+        assertFalse( dict.containsKey( null ) );
+        assertEquals( Arrays.asList( "a", "b" ), new ArrayList<String>( dict.keySet() ) );
+        
+        Map<String,Object> expected = new HashMap<String,Object>();
+        expected.put( "a", "2" );
+        expected.put( "b", nested );
+        assertEquals( expected, dict );
+        assertEquals( dict, expected );
+        assertEquals( expected.hashCode(), dict.hashCode() );
+        
+        try {
+            dict.put( "c", "3" );
+            fail( "compact dicts are read-only" );
+        }
+        catch( UnsupportedOperationException ex ) {
+            //expected
+        }
+    }
+    
+    public void testNumbers() throws Exception {
+        byte[] bytes = ( "<plist><dict><key>ID</key><integer>4000</integer><key>Big</key><integer>-70000</integer>" +
+                         "<key>Position</key><real>0.25</real><key>Name</key><string>x</string>" + 
+                         "<key>List</key><array><integer>7</integer><real>1.5</real></array></dict></plist>" ).getBytes( "UTF-8" );
+        
+        Map<String,Object> pulled = (Map<String,Object>) new PListPullParser().read( new ByteArrayInputStream( bytes ) );
+        Map<String,Object> lexed  = (Map<String,Object>) PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE );
+        
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryPListWriter.write( pulled, binary );
+        Map<String,Object> binaryDict = (Map<String,Object>) BinaryPListParser.parse( ByteBuffer.wrap( binary.toByteArray() ) );
+        
+        for( Map<String,Object> dict : Arrays.asList( pulled, lexed, binaryDict ) ) {
+            assertEquals( 4000, CompactDict.intValue( dict, "ID", 0 ) );
+            assertEquals( -70000, CompactDict.intValue( dict, "Big", 0 ) );
+            assertEquals( -1, CompactDict.intValue( dict, "Missing", -1 ) );
+            assertEquals( -1, CompactDict.intValue( dict, "Name", -1 ) );
+            assertEquals( 0.25, CompactDict.doubleValue( dict, "Position", 0 ) );
+            assertEquals( 4000.0, CompactDict.doubleValue( dict, "ID", 0 ) );
+            
+            //boxed through the map interface
+            assertEquals( Integer.valueOf( 4000 ), dict.get( "ID" ) );
+            assertSame( dict.get( "ID" ), dict.get( "ID" ) );
+            assertEquals( Double.valueOf( 0.25 ), dict.get( "Position" ) );
+            assertEquals( Arrays.asList( 7, 1.5 ), dict.get( "List" ) );
+        }
+        
+        assertEquals( pulled, lexed );
+        assertEquals( pulled, binaryDict );
+        assertEquals( pulled.hashCode(), lexed.hashCode() );
+    }
+    
+    public void testKeyTable() {
+        KeyTable table = new KeyTable( 8 );
+        
+        String key = table.internTrimmed( new StringBuilder( "  Class\n" ) );
+        assertEquals( "Class", key );
+        assertSame( key, table.internTrimmed( new StringBuilder( "Class" ) ) );
+        assertSame( key, table.intern( new String( "Class" ) ) );
+        
+        //the table stops interning when full
+        for( int i = 0; i < 20; i++ ) assertEquals( "key" + i, table.intern( "key" + i ) );
+        assertNotSame( table.intern( new String( "key19" ) ), table.intern( new String( "key19" ) ) );
+        assertSame( key, table.intern( "Class" ) );
+    }
+    
+    public void testParsers() throws Exception {
+        byte[] bytes = PLIST.getBytes( "UTF-8" );
+        
+        Object pulled = new PListPullParser().read( new ByteArrayInputStream( bytes ) );
+        Object lexed  = PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE );
+        assertEquals( pulled, lexed );
+        
+        List<?> graphics = (List<?>) lexed;
+        Map<?,?> shape = (Map<?,?>) graphics.get( 0 );
+        Map<?,?> line  = (Map<?,?>) graphics.get( 1 );
+        assertTrue( shape instanceof CompactDict );
+        assertEquals( 4, shape.get( "ID" ) );
+        assertEquals( 4, shape.size() );
+        assertEquals( Collections.emptyMap(), shape.get( "Empty" ) );
+        assertEquals( "NO", ((Map<?,?>) ((Map<?,?>) shape.get( "Style" )).get( "fill" )).get( "Draws" ) );
+        
+        //keys are shared between dicts and parses
+        assertSame( shape.keySet().iterator().next(), line.keySet().iterator().next() );
+        Map<?,?> pulledShape = (Map<?,?>) ((List<?>) pulled).get( 0 );
+        assertSame( shape.keySet().iterator().next(), pulledShape.keySet().iterator().next() );
+    }
+}
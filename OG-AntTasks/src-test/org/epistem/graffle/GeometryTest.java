@@ -0,0 +1,93 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the coordinate string decoder
+ *
+ * @author nickmain
+ */
+public class GeometryTest extends TestCase {
+
+    public void testBounds() {
+        double[] out = new double[ 5 ];
+        assertEquals( 5, Geometry.parse( "{{10, -20.5}, {1.25e2, 0.001}}", out, 1, 4 ) );
+        assertTrue( Arrays.equals( new double[] { 0, 10, -20.5, 125, 0.001 }, out ) );
+    }
+    
+    public void testPoints() {
+        double[] coords = Geometry.parsePoints( Arrays.asList( "{1, 2}", "{3.5, -4}" ) );
+        assertTrue( Arrays.equals( new double[] { 1, 2, 3.5, -4 }, coords ) );
+    }
+    
+    public void testTooFew() {
+        try {
+            Geometry.parse( "{{1, 2}, {3}}", new double[ 4 ], 0, 4 );
+            fail( "missing number should be rejected" );
+        }
+        catch( IllegalArgumentException ex ) {
+            //expected
+        }
+        
+        try {
+            Geometry.parse( "{1, x}", new double[ 2 ], 0, 2 );
+            fail( "malformed number should be rejected" );
+        }
+        catch( NumberFormatException ex ) {
+            //expected
+        }
+    }
+    
+    public void testMatchesParseDouble() {
+        String[] samples = { "0", "-0", "0.0", "+3", "007", "1.", ".5", "-.5", "1e3", "1E-3", 
+                             "123456789012345", "1234567890123456789", "0.1", "0.30000000000000004",
+                             "1e22", "1e23", "1e-22", "4.9e-324", "1.7976931348623157e308", 
+                             "Infinity", "NaN", "0x1p3" };
+        for( String s : samples ) {
+            assertEquals( s, Double.doubleToRawLongBits( Double.parseDouble( s ) ), 
+                             Double.doubleToRawLongBits( Geometry.parseNumber( s, 0, s.length() ) ) );
+        }
+        
+        Random random = new Random( 42 );
+        for( int i = 0; i < 100000; i++ ) {
+            String s;
+            switch( i % 3 ) {
+                case 0:  s = Double.toString( random.nextDouble() * 2000 - 1000 ); break;
+                case 1:  s = String.format( Locale.ROOT, "%." + random.nextInt( 8 ) + "f", random.nextDouble() * 10000 ); break;
+                default: s = Long.toString( random.nextLong() % 100000 ) + "." + random.nextInt( 1000 ); break;
+            }
+            assertEquals( s, Double.parseDouble( s ), Geometry.parseNumber( s, 0, s.length() ) );
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test reading documents through the different kinds of source
+ *
+ * @author nickmain
+ */
+public class GraffleSourceTest extends TestCase {
+
+    private static final byte[] IMAGE = { 1, 2, 3, 4, 5 };
+    
+    private static byte[] plist( String name ) throws IOException {
+        Map<String,Object> plist = new HashMap<String,Object>();
+        plist.put( "Name", name );
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPListWriter.write( plist, out );
+        return out.toByteArray();
+    }
+    
+    private static byte[] gzip( byte[] bytes ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gz = new GZIPOutputStream( out );
+        gz.write( bytes );
+        gz.close();
+        return out.toByteArray();
+    }
+    
+    private static void write( byte[] bytes, File file ) throws IOException {
+        FileOutputStream out = new FileOutputStream( file );
+        try {
+            out.write( bytes );
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    private static void addEntry( ZipOutputStream zip, String name, byte[] bytes, boolean stored ) throws IOException {
+        ZipEntry entry = new ZipEntry( name );
+        if( stored ) {
+            CRC32 crc = new CRC32();
+            crc.update( bytes );
+            entry.setMethod( ZipEntry.STORED );
+            entry.setSize( bytes.length );
+            entry.setCrc( crc.getValue() );
+        }
+        zip.putNextEntry( entry );
+        zip.write( bytes );
+        zip.closeEntry();
+    }
+    
+    private static String name( GraffleSource source ) throws Exception {
+        Map<?,?> plist = (Map<?,?>) PListParser.parse( source, PListParser.Mode.EAGER );
+        return (String) plist.get( "Name" );
+    }
+    
+    private static byte[] bytes( ByteBuffer buffer ) {
+        byte[] bytes = new byte[ buffer.remaining() ];
+        buffer.duplicate().get( bytes );
+        return bytes;
+    }
+    
+    public void testFlatFile() throws Exception {
+        File file = File.createTempFile( "source", ".graffle" );
+        try {
+            write( plist( "flat" ), file );
+            
+            GraffleSource source = GraffleSource.open( file );
+            assertEquals( file, source.file() );
+            assertEquals( "flat", name( source ) );
+            assertTrue( source.entryNames().isEmpty() );
+            assertNull( source.image( 1 ) );
+            
+            write( gzip( plist( "gzipped" ) ), file );
+            assertEquals( "gzipped", name( GraffleSource.open( file ) ) );
+            assertEquals( "gzipped", new OmniGraffleDoc( file ).plist().get( "Name" ) );
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    public void testGzippedFormats() throws Exception {
+        File file = File.createTempFile( "source", ".graffle" );
+        try {
+            String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                         "<plist version=\"1.0\"><dict><key>Name</key><string>xml</string></dict></plist>\n";
+            
+            Map<String,byte[]> contents = new LinkedHashMap<String,byte[]>();
+            contents.put( "binary", plist( "binary" ) );
+            contents.put( "xml", xml.getBytes( "UTF-8" ) );
+            
+            for( Map.Entry<String,byte[]> entry : contents.entrySet() ) {
+                write( gzip( entry.getValue() ), file );
+                String name = entry.getKey();
+                
+                for( PListParser.Mode mode : PListParser.Mode.values() ) {
+                    Map<?,?> plist = (Map<?,?>) PListParser.parse( GraffleSource.open( file ), mode );
+                    assertEquals( name, plist.get( "Name" ) );
+                }
+                
+                assertEquals( name, ((Map<?,?>) PListParser.parse( file )).get( "Name" ) );
+                assertEquals( name, ((Map<?,?>) PListPullParser.parse( file )).get( "Name" ) );
+                assertEquals( name, ((Map<?,?>) PListParser.parse( file, PListProjection.of( "Name" ) ) ).get( "Name" ) );
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    public void testPackage() throws Exception {
+        File dir = File.createTempFile( "source", ".graffle" );
+        dir.delete();
+        dir.mkdir();
+        
+        File[] files = { new File( dir, GraffleSource.DATA_PLIST ), 
+                         new File( dir, "image1.png" ) };
+        try {
+            write( gzip( plist( "package" ) ), files[0] );
+            write( IMAGE, files[1] );
+            
+            GraffleSource source = GraffleSource.open( dir );
+            assertEquals( dir, source.file() );
+            assertEquals( "package", name( source ) );
+            assertEquals( Arrays.asList( "image1.png" ), source.entryNames() );
+            assertTrue( Arrays.equals( IMAGE, bytes( source.image( 1 ) ) ) );
+            assertNull( source.image( 2 ) );
+        }
+        finally {
+            for( File file : files ) file.delete();
+            dir.delete();
+        }
+    }
+    
+    public void testZippedPackage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream( out );
+        addEntry( zip, "doc.graffle/", new byte[0], true );
+        addEntry( zip, "doc.graffle/" + GraffleSource.DATA_PLIST, plist( "zipped" ), false );
+        addEntry( zip, "doc.graffle/image1.tiff", IMAGE, true );
+        addEntry( zip, "doc.graffle/image2.png", IMAGE, false );
+        addEntry( zip, "doc.graffle/nested/" + GraffleSource.DATA_PLIST, plist( "nested" ), true );
+        zip.close();
+        
+        File file = File.createTempFile( "source", ".zip" );
+        try {
+            write( out.toByteArray(), file );
+            
+            GraffleSource source = GraffleSource.open( file );
+            assertEquals( "zipped", name( source ) );
+            assertEquals( Arrays.asList( "image1.tiff", "image2.png" ), source.entryNames() );
+            assertTrue( Arrays.equals( IMAGE, bytes( source.image( 1 ) ) ) );
+            assertTrue( Arrays.equals( IMAGE, bytes( source.image( 2 ) ) ) );
+            assertNull( source.entry( "nested/" + GraffleSource.DATA_PLIST ) );
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    public void testNoPlistInZip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream( out );
+        addEntry( zip, "image1.png", IMAGE, false );
+        zip.close();
+        
+        try {
+            GraffleSource.wrap( ByteBuffer.wrap( out.toByteArray() ) );
+            fail();
+        }
+        catch( IOException expected ) {}
+    }
+    
+    public void testBuffer() throws Exception {
+        GraffleSource source = GraffleSource.wrap( ByteBuffer.wrap( gzip( plist( "memory" ) ) ) );
+        assertNull( source.file() );
+        assertEquals( "memory", name( source ) );
+        
+        OmniGraffleDoc doc = new OmniGraffleDoc( source, PListParser.Mode.LAZY );
+        assertSame( source, doc.source() );
+        assertNull( doc.file() );
+        assertEquals( "memory", doc.plist().get( "Name" ) );
+    }
+}
@@ -0,0 +1,139 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.epistem.graffle.PListByteParser.Laziness;
+
+/**
+ * Test lazy plist decoding
+ *
+ * @author nickmain
+ */
+public class LazyPListTest extends TestCase {
+
+    private static final String PLIST = 
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+        "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\r\n" +
+        "<plist version=\"1.0\">\r\n" +
+        "<dict>\r\n" +
+        "  <!-- a comment -->\r\n" +
+        "  <key>Text</key><string>a &lt;b&gt; &amp; &#233;&#x41;\u00e9\u4e2d\ud83d\ude00\r\nline<![CDATA[<raw>]]></string>\r\n" +
+        "  <key>Sheets</key>\r\n" +
+        "  <array>\r\n" +
+        "    <dict>\r\n" +
+        "      <key>SheetTitle</key><string>One</string>\r\n" +
+        "      <key>GraphicsList</key>\r\n" +
+        "      <array>\r\n" +
+        "        <dict><key>ID</key><integer>3</integer><key>Empty</key><dict/></dict>\r\n" +
+        "        <dict><key>ID</key><integer>4</integer><key>Ok</key><true/></dict>\r\n" +
+        "      </array>\r\n" +
+        "    </dict>\r\n" +
+        "    <dict/>\r\n" +
+        "  </array>\r\n" +
+        "</dict>\r\n" +
+        "</plist>\r\n";
+
+    @SuppressWarnings("unchecked")
+    public void testLazy() throws Exception {
+        byte[] bytes = PLIST.getBytes( "UTF-8" );
+        Map<String,Object> dict = (Map<String,Object>) PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.DOCUMENT );
+        
+        List<Object> sheets = (List<Object>) dict.get( "Sheets" );
+        LazyDict sheet = (LazyDict) sheets.get( 0 );
+        assertFalse( sheet.isDecoded() );
+        assertEquals( "One", sheet.get( "SheetTitle" ) );
+        assertTrue( sheet.isDecoded() );
+        
+        List<Object> graphics = (List<Object>) sheet.get( "GraphicsList" );
+        LazyDict graphic = (LazyDict) graphics.get( 1 );
+        assertFalse( graphic.isDecoded() );
+        assertEquals( 4, graphic.get( "ID" ) );
+        assertFalse( ((LazyDict) graphics.get( 0 )).isDecoded() );
+        
+        Object expected = new PListPullParser().read( new ByteArrayInputStream( bytes ) );
+        assertEquals( expected, dict );
+        assertEquals( expected, PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE ) );
+    }
+    
+    @SuppressWarnings("unchecked")
+    public void testDeferredData() throws Exception {
+        byte[] bytes = ( "<plist><dict><key>Sheets</key><array><dict>" +
+                         "<key>Image</key><data>\n  QUJD\n  REVG\n</data>" +
+                         "<key>Entity</key><data>QUJD&#10;REVG</data>" +
+                         "<key>Empty</key><data/>" +
+                         "</dict></array></dict></plist>" ).getBytes( "UTF-8" );
+        
+        Map<String,Object> dict = (Map<String,Object>) PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.DOCUMENT, true );
+        Map<String,Object> sheet = (Map<String,Object>) ((List<Object>) dict.get( "Sheets" )).get( 0 );
+        
+        PListData image = (PListData) sheet.get( "Image" );
+        assertEquals( "ABCDEF", new String( image.bytes(), "US-ASCII" ) );
+        assertNotSame( image.bytes(), image.bytes() );
+        
+        //text that is not plain base64 is decoded straight away
+        assertEquals( "ABCDEF", new String( (byte[]) sheet.get( "Entity" ), "US-ASCII" ) );
+        assertEquals( 0, ((byte[]) sheet.get( "Empty" )).length );
+        
+        Map<String,Object> eager = (Map<String,Object>) PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE );
+        Map<String,Object> eagerSheet = (Map<String,Object>) ((List<Object>) eager.get( "Sheets" )).get( 0 );
+        assertEquals( "ABCDEF", new String( (byte[]) eagerSheet.get( "Image" ), "US-ASCII" ) );
+        
+        Map<String,Object> pulled = (Map<String,Object>) new PListPullParser().read( new ByteArrayInputStream( bytes ) );
+        Map<String,Object> pulledSheet = (Map<String,Object>) ((List<Object>) pulled.get( "Sheets" )).get( 0 );
+        assertEquals( "ABCDEF", new String( (byte[]) pulledSheet.get( "Image" ), "US-ASCII" ) );
+        assertEquals( "ABCDEF", new String( (byte[]) pulledSheet.get( "Entity" ), "US-ASCII" ) );
+    }
+    
+    public void testSameAsEager() throws Exception {
+        for( String name : new String[] { "test-owl.graffle", "test-src-extract.graffle" } ) {
+            File file = new File( "test-diagrams/" + name );
+            assertEquals( name, PListPullParser.parse( file ), PListParser.parseLazy( file ) );
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    public void testParallel() throws Exception {
+        for( String name : new String[] { "test-owl.graffle", "test-src-extract.graffle" } ) {
+            File file = new File( "test-diagrams/" + name );
+            Map<String,Object> plist = (Map<String,Object>) PListParser.parseParallel( file );
+            assertEquals( name, PListPullParser.parse( file ), plist );
+            
+            for( Object sheet : (List<Object>) plist.get( "Sheets" ) ) {
+                assertFalse( sheet instanceof LazyDict );
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the document image service
+ *
+ * @author nickmain
+ */
+public class OGImagesTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        OGImages.clearCache();
+    }
+
+    //a document with one sheet, with a graphic for each image id
+    private static Map<String,Object> plist( int... imageIds ) {
+        Map<String,Object> layer = new HashMap<String,Object>();
+        layer.put( "Name", "Layer 1" );
+        
+        List<Object> graphics = new ArrayList<Object>();
+        for( int id : imageIds ) {
+            Map<String,Object> graphic = new HashMap<String,Object>();
+            graphic.put( "Class", "ShapedGraphic" );
+            graphic.put( "ID", id + 100 );
+            graphic.put( "ImageID", id );
+            graphics.add( graphic );
+        }
+        
+        Map<String,Object> plist = new HashMap<String,Object>();
+        plist.put( "Layers", Arrays.asList( (Object) layer ) );
+        plist.put( "GraphicsList", graphics );
+        return plist;
+    }
+    
+    private static byte[] png( int width, int height ) throws Exception {
+        BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write( image, "png", out );
+        return out.toByteArray();
+    }
+    
+    private static void write( byte[] bytes, File file ) throws Exception {
+        FileOutputStream out = new FileOutputStream( file );
+        try {
+            out.write( bytes );
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    public void testPackage() throws Exception {
+        File dir = File.createTempFile( "images", ".graffle" );
+        dir.delete();
+        dir.mkdir();
+        
+        File[] files = { new File( dir, "data.plist" ), 
+                         new File( dir, "image1.png" ), 
+                         new File( dir, "image2.png" ) };
+        try {
+            BinaryPListWriter.write( plist( 1, 2 ), files[0] );
+            byte[] png = png( 40, 20 );
+            write( png, files[1] );
+            write( png, files[2] );
+            
+            OmniGraffleDoc doc = new OmniGraffleDoc( dir );
+            OGImages images = doc.images();
+            
+            assertEquals( new Dimension( 40, 20 ), images.size( 1 ) );
+            assertNull( images.size( 3 ) );
+            assertNull( images.read( 3 ) );
+            
+            BufferedImage image = doc.readImage( 1 );
+            assertEquals( 40, image.getWidth() );
+            assertSame( image, images.read( 1 ) );
+            
+            //same bytes, so the same decoded image
+            assertSame( image, images.read( 2 ) );
+            
+            BufferedImage half = images.read( 1, 2 );
+            assertEquals( 20, half.getWidth() );
+            assertEquals( 10, half.getHeight() );
+            assertEquals( 2, OGImages.cachedCount() );
+        }
+        finally {
+            for( File file : files ) file.delete();
+            dir.delete();
+        }
+    }
+    
+    public void testFlatFile() throws Exception {
+        File file = File.createTempFile( "images", ".graffle" );
+        try {
+            Map<String,Object> plist = plist( 1, 1, 2 );
+            plist.put( "ImageList", Arrays.asList( (Object) "image2.png", "image1.png" ) );
+            plist.put( "Images",    Arrays.asList( (Object) png( 8, 8 ), png( 30, 10 ) ) );
+            BinaryPListWriter.write( plist, file );
+            
+            OmniGraffleDoc doc = new OmniGraffleDoc( file );
+            assertEquals( new Dimension( 30, 10 ), doc.images().size( 1 ) );
+            
+            List<Future<BufferedImage>> futures = doc.images().prefetch( doc.sheets().get( 0 ), 1 );
+            assertEquals( 2, futures.size() );
+            for( Future<BufferedImage> future : futures ) assertNotNull( future.get() );
+            
+            assertEquals( 2, OGImages.cachedCount() );
+            assertEquals( 8, doc.readImage( 2 ).getWidth() );
+            
+            OmniGraffleDoc projected = new OmniGraffleDoc( file, PListProjection.MODEL );
+            assertEquals( 30, projected.readImage( 1 ).getWidth() );
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    public void testSharedAcrossDocuments() throws Exception {
+        File[] files = { File.createTempFile( "images", ".graffle" ), 
+                         File.createTempFile( "images", ".graffle" ) };
+        try {
+            for( File file : files ) {
+                Map<String,Object> plist = plist( 1 );
+                plist.put( "ImageList", Arrays.asList( (Object) "image1.png" ) );
+                plist.put( "Images",    Arrays.asList( (Object) png( 16, 16 ) ) );
+                BinaryPListWriter.write( plist, file );
+            }
+            
+            BufferedImage image = new OmniGraffleDoc( files[0] ).readImage( 1 );
+            assertSame( image, new OmniGraffleDoc( files[1] ).readImage( 1 ) );
+            assertEquals( 1, OGImages.cachedCount() );
+        }
+        finally {
+            for( File file : files ) file.delete();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test concurrent document loading
+ *
+ * @author nickmain
+ */
+public class OmniGraffleDocTest extends TestCase {
+
+    private static final List<File> FILES = Arrays.asList( 
+        new File( "test-diagrams/test-owl.graffle" ),
+        new File( "test-diagrams/test-src-extract.graffle" ),
+        new File( "test-diagrams/test-owl.graffle" ),
+        new File( "test-diagrams/missing.graffle" ) );
+    
+    public void testLoadAll() throws Exception {
+        List<Future<OmniGraffleDoc>> futures = OmniGraffleDoc.loadAll( FILES );
+        assertEquals( FILES.size(), futures.size() );
+        
+        for( int i = 0; i < 3; i++ ) {
+            OmniGraffleDoc doc = futures.get( i ).get();
+            assertEquals( FILES.get( i ), doc.file() );
+            assertEquals( new OmniGraffleDoc( FILES.get( i ) ).sheets().size(), doc.sheets().size() );
+        }
+        
+        try {
+            futures.get( 3 ).get();
+            fail( "missing file should not load" );
+        }
+        catch( ExecutionException ex ) {
+            //expected
+        }
+    }
+    
+    public void testSharedDocument() throws Exception {
+        final OmniGraffleDoc doc = new OmniGraffleDoc( FILES.get( 0 ), PListParser.Mode.LAZY );
+        final int id = doc.sheets().get( 0 ).graphics().get( 0 ).id();
+        
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try {
+            List<Future<OGGraphic>> futures = new ArrayList<Future<OGGraphic>>();
+            for( int i = 0; i < 8; i++ ) {
+                futures.add( executor.submit( new Callable<OGGraphic>() {
+                    public OGGraphic call() {
+                        doc.sheets();
+                        return doc.getGraphic( id );
+                    }
+                }));
+            }
+            
+            OGGraphic graphic = futures.get( 0 ).get();
+            assertNotNull( graphic );
+            for( Future<OGGraphic> future : futures ) assertSame( graphic, future.get() );
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    public void testStableGraphics() throws Exception {
+        OmniGraffleDoc doc = new OmniGraffleDoc( FILES.get( 0 ) );
+        
+        int groups = 0;
+        for( OGSheet sheet : doc.sheets() ) {
+            for( OGGraphic g : sheet.graphics() ) {
+                assertEquals( g.bounds(), g.bounds() );
+                assertNotSame( g.bounds(), g.bounds() );
+                
+                if( g.graphicClass() != OGGraphic.GraphicClass.Group 
+                 && g.graphicClass() != OGGraphic.GraphicClass.TableGroup ) continue;
+                groups++;
+                
+                List<OGGraphic> kids = g.graphics();
+                assertSame( kids, g.graphics() );
+                for( OGGraphic kid : kids ) {
+                    assertSame( g, kid.parent );
+                }
+                
+                try {
+                    kids.clear();
+                    fail( "child list should be unmodifiable" );
+                }
+                catch( UnsupportedOperationException ex ) {
+                    //expected
+                }
+            }
+        }
+        assertTrue( groups > 0 );
+    }
+    
+    public void testSheetLookup() throws Exception {
+        OmniGraffleDoc doc = new OmniGraffleDoc( FILES.get( 1 ) );
+        assertEquals( 2, doc.sheetCount() );
+        assertEquals( "dup", doc.sheetTitle( 1 ) );
+        
+        OGSheet dup = doc.sheet( "dup" );
+        assertEquals( "dup", dup.title() );
+        assertSame( dup, doc.sheet( 1 ) );
+        assertNull( doc.sheet( "missing" ) );
+        
+        List<OGSheet> sheets = doc.sheets();
+        assertEquals( 2, sheets.size() );
+        assertSame( dup, sheets.get( 1 ) );
+        assertSame( sheets.get( 0 ), doc.sheet( "Canvas 1" ) );
+    }
+}
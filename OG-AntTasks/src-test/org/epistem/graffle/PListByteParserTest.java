@@ -0,0 +1,114 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.epistem.graffle.PListByteParser.Laziness;
+
+/**
+ * Test the byte level plist lexer
+ *
+ * @author nickmain
+ */
+public class PListByteParserTest extends TestCase {
+
+    public void testNumbers() throws Exception {
+        StringBuilder plist = new StringBuilder( "<plist version=\"1.0\"><array>" );
+        
+        String[] reals = { "0", "-0", "1.5", " 2.25 ", "-3.125", "1e3", "1.5E-7", "+4", ".5", "6.", 
+                           "123456789012345678", "0.1", "0.30000000000000004", "1e300", "NaN", "-Infinity" };
+        for( String real : reals ) plist.append( "<real>" ).append( real ).append( "</real>" );
+        
+        Random random = new Random( 7 );
+        for( int i = 0; i < 1000; i++ ) {
+            plist.append( "<real>" ).append( ( random.nextInt( 2000000 ) - 1000000 ) / 1000.0 ).append( "</real>" );
+            plist.append( "<real>" ).append( random.nextDouble() * 1000 ).append( "</real>" );
+        }
+        
+        String[] ints = { "0", "-7", " 42 ", "+5", "2147483647", "-2147483648", "007" };
+        for( String integer : ints ) plist.append( "<integer>" ).append( integer ).append( "</integer>" );
+        
+        plist.append( "</array></plist>" );
+        
+        byte[] bytes = plist.toString().getBytes( "UTF-8" );
+        assertEquals( new PListPullParser().read( new ByteArrayInputStream( bytes ) ),
+                      PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE ) );
+    }
+    
+    public void testIntegerOverflow() throws Exception {
+        byte[] bytes = "<plist><integer>2147483648</integer></plist>".getBytes( "UTF-8" );
+        
+        try {
+            PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE );
+            fail( "overflow should not parse" );
+        }
+        catch( NumberFormatException ex ) {
+            //expected
+        }
+    }
+    
+    public void testEncoding() throws Exception {
+        assertTrue( PListByteParser.isUTF8( utf8( "<plist/>" ) ) );
+        assertTrue( PListByteParser.isUTF8( utf8( "<?xml version=\"1.0\" encoding=\"UTF-8\"?><plist/>" ) ) );
+        assertTrue( PListByteParser.isUTF8( utf8( "<?xml version='1.0' encoding='us-ascii'?><plist/>" ) ) );
+        assertFalse( PListByteParser.isUTF8( utf8( "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><plist/>" ) ) );
+        assertFalse( PListByteParser.isUTF8( ByteBuffer.wrap( "<plist/>".getBytes( "UTF-16" ) ) ) );
+    }
+    
+    public void testMapped() throws Exception {
+        File compressed = new File( "test-diagrams/test-owl.graffle" );
+        File plain = File.createTempFile( "test-owl", ".plist" );
+        
+        try {
+            InputStream in = new GZIPInputStream( new FileInputStream( compressed ) );
+            OutputStream out = new FileOutputStream( plain );
+            byte[] buffer = new byte[ 8192 ];
+            int count;
+            while( ( count = in.read( buffer ) ) >= 0 ) out.write( buffer, 0, count );
+            in.close();
+            out.close();
+            
+            Object expected = PListPullParser.parse( compressed );
+            assertEquals( expected, PListParser.parseEager( plain ) );
+            assertEquals( expected, PListParser.parseLazy( plain ) );
+        }
+        finally {
+            plain.delete();
+        }
+    }
+    
+    private ByteBuffer utf8( String s ) throws Exception {
+        return ByteBuffer.wrap( s.getBytes( "UTF-8" ) );
+    }
+}
@@ -0,0 +1,135 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the sharing of identical plist subtrees
+ *
+ * @author nickmain
+ */
+@SuppressWarnings("unchecked")
+public class PListCanonicalizerTest extends TestCase {
+
+    private static final File FILE = new File( "test-diagrams/test-owl.graffle" );
+    
+    public void testCanonical() throws Exception {
+        PListCanonicalizer canonicalizer = new PListCanonicalizer();
+        
+        Map<String,Object> original = (Map<String,Object>) PListParser.parseEager( FILE );
+        Map<String,Object> first    = (Map<String,Object>) canonicalizer.canonical( PListParser.parseEager( FILE ) );
+        assertEquals( original, first );
+        
+        int size = canonicalizer.size();
+        assertTrue( size > 0 );
+        
+        //a second copy is entirely shared with the first
+        Map<String,Object> second = (Map<String,Object>) canonicalizer.canonical( PListParser.parseEager( FILE ) );
+        assertSame( first, second );
+        assertEquals( size, canonicalizer.size() );
+        
+        canonicalizer.clear();
+        assertEquals( 0, canonicalizer.size() );
+        assertNotSame( first, canonicalizer.canonical( PListParser.parseEager( FILE ) ) );
+    }
+    
+    public void testUnmodifiable() throws Exception {
+        PListCanonicalizer canonicalizer = new PListCanonicalizer();
+        List<Object> first = new ArrayList<Object>();
+        first.add( new ArrayList<Object>( Arrays.asList( "a", 1 ) ) );
+        first = (List<Object>) canonicalizer.canonical( first );
+        
+        //an unmodifiable list and map with an equal element are copied
+        List<Object> list = Collections.unmodifiableList( Arrays.asList( (Object) new ArrayList<Object>( Arrays.asList( "a", 1 ) ) ) );
+        List<Object> canonicalList = (List<Object>) canonicalizer.canonical( list );
+        assertNotSame( list, canonicalList );
+        assertSame( first, canonicalList );
+        
+        Map<String,Object> map = Collections.unmodifiableMap( Collections.singletonMap( "key", (Object) new ArrayList<Object>( Arrays.asList( "a", 1 ) ) ) );
+        Map<String,Object> canonicalMap = (Map<String,Object>) canonicalizer.canonical( map );
+        assertNotSame( map, canonicalMap );
+        assertSame( first.get( 0 ), canonicalMap.get( "key" ) );
+    }
+    
+    public void testSharedStyles() throws Exception {
+        Map<String,Object> plist = (Map<String,Object>) new PListCanonicalizer().canonical( PListParser.parseEager( FILE ) );
+        
+        //graphics with equal styles have the same style instance
+        Map<Object,Object> styles = new HashMap<Object,Object>();
+        int count = 0;
+        for( Object sheet : (List<Object>) plist.get( "Sheets" ) ) {
+            for( Object graphic : (List<Object>) ((Map<String,Object>) sheet).get( "GraphicsList" ) ) {
+                Object style = ((Map<String,Object>) graphic).get( "Style" );
+                if( style == null ) continue;
+                count++;
+                
+                Object existing = styles.get( style );
+                if( existing == null ) styles.put( style, style );
+                else assertSame( existing, style );
+            }
+        }
+        assertTrue( styles.size() < count );
+    }
+    
+    public void testNumbers() throws Exception {
+        String xml = "<plist><array>" 
+                   + "<dict><key>A</key><integer>100000</integer><key>B</key><real>1.5</real></dict>"
+                   + "<dict><key>A</key><integer>100000</integer><key>B</key><real>1.5</real></dict>"
+                   + "<dict><key>A</key><integer>100000</integer><key>B</key><real>2.5</real></dict>"
+                   + "<dict><key>B</key><real>1.5</real><key>A</key><integer>100000</integer></dict>"
+                   + "</array></plist>";
+        
+        List<Object> list = (List<Object>) new PListCanonicalizer().canonical( 
+            PListByteParser.parse( ByteBuffer.wrap( xml.getBytes( "UTF-8" ) ), PListByteParser.Laziness.NONE ) );
+        
+        assertSame( list.get( 0 ), list.get( 1 ) );
+        assertNotSame( list.get( 0 ), list.get( 2 ) );
+        assertEquals( list.get( 0 ), list.get( 3 ) );
+        assertEquals( 1.5, ((Map<String,Object>) list.get( 3 )).get( "B" ) );
+    }
+    
+    public void testDocument() throws Exception {
+        OmniGraffleDoc plain     = new OmniGraffleDoc( FILE );
+        OmniGraffleDoc canonical = new OmniGraffleDoc( FILE, PListParser.Mode.EAGER, new PListCanonicalizer() );
+        
+        List<OGGraphic> expected = plain.sheets().get( 0 ).graphics();
+        List<OGGraphic> actual   = canonical.sheets().get( 0 ).graphics();
+        assertEquals( expected.size(), actual.size() );
+        
+        for( int i = 0; i < expected.size(); i++ ) {
+            assertEquals( expected.get( i ).strokePattern(), actual.get( i ).strokePattern() );
+            assertEquals( expected.get( i ).headArrow(), actual.get( i ).headArrow() );
+            assertEquals( expected.get( i ).tailArrow(), actual.get( i ).tailArrow() );
+        }
+    }
+}
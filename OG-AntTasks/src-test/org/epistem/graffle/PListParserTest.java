@@ -0,0 +1,130 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the SAX plist parser sessions
+ *
+ * @author nickmain
+ */
+public class PListParserTest extends TestCase {
+
+    //the DTD url can never be fetched
+    private static final String PLIST = 
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://unreachable.invalid/PropertyList-1.0.dtd\">\n" +
+        "<plist version=\"1.0\"><dict><key>Name</key><string>%s</string></dict></plist>\n";
+    
+    public void testOfflineDTD() throws Exception {
+        File file = write( "offline" );
+        try {
+            Map<?,?> plist = (Map<?,?>) PListParser.parse( file );
+            assertEquals( "offline", plist.get( "Name" ) );
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    public void testParseAll() throws Exception {
+        List<File> files = new ArrayList<File>();
+        try {
+            for( int i = 0; i < 5; i++ ) files.add( write( "file" + i ) );
+            
+            PListParser.Session session = new PListParser.Session();
+            List<Object> plists = session.parseAll( files );
+            assertEquals( files.size(), plists.size() );
+            for( int i = 0; i < files.size(); i++ ) {
+                assertEquals( "file" + i, ((Map<?,?>) plists.get( i )).get( "Name" ) );
+                assertEquals( plists.get( i ), PListPullParser.parse( files.get( i ) ) );
+            }
+            
+            assertEquals( plists, PListParser.parseAll( files ) );
+        }
+        finally {
+            for( File file : files ) file.delete();
+        }
+    }
+    
+    public void testConcurrentDates() throws Exception {
+        final File file = File.createTempFile( "plist", ".plist" );
+        Writer out = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try {
+            out.write( "<plist><array>" );
+            for( int i = 0; i < 500; i++ ) {
+                out.write( String.format( "<date>20%02d-%02d-%02dT%02d:%02d:%02dZ</date>", i % 30, i % 12 + 1, i % 28 + 1, i % 24, i % 60, i % 60 ) );
+            }
+            out.write( "</array></plist>" );
+        }
+        finally {
+            out.close();
+        }
+        
+        try {
+            final Object expected = PListParser.parse( file );
+            
+            ExecutorService executor = Executors.newFixedThreadPool( 4 );
+            try {
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for( int i = 0; i < 20; i++ ) {
+                    futures.add( executor.submit( new Callable<Object>() {
+                        public Object call() throws Exception {
+                            return PListParser.parse( file );
+                        }
+                    }));
+                }
+                
+                for( Future<Object> future : futures ) assertEquals( expected, future.get() );
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    private static File write( String name ) throws IOException {
+        File file = File.createTempFile( "plist", ".plist" );
+        Writer out = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try {
+            out.write( String.format( PLIST, name ) );
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,162 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test plist key-path projections
+ *
+ * @author nickmain
+ */
+public class PListProjectionTest extends TestCase {
+
+    private static final String PLIST = 
+        "<plist version=\"1.0\"><dict>" +
+        "<key>Creator</key><string>nickmain</string>" +
+        "<key>PrintInfo</key><dict><key>NSPaperSize</key><data>AAEC</data></dict>" +
+        "<key>Sheets</key><array><dict>" +
+        "  <key>SheetTitle</key><string>One</string>" +
+        "  <key>GraphicsList</key><array>" +
+        "    <dict><key>ID</key><integer>3</integer>" +
+        "      <key>Style</key><dict><key>fill</key><dict><key>Color</key><string>red</string></dict>" +
+        "                           <key>stroke</key><dict><key>Pattern</key><integer>1</integer></dict></dict>" +
+        "      <key>Notes</key><string>note</string></dict>" +
+        "    <dict><key>ID</key><integer>4</integer><key>Graphics</key><array>" +
+        "      <dict><key>ID</key><integer>5</integer><key>Notes</key><array><string>x</string></array>" +
+        "            <key>ImageData</key><data>AAEC</data></dict>" +
+        "    </array></dict>" +
+        "  </array>" +
+        "</dict></array>" +
+        "</dict></plist>";
+    
+    private static final PListProjection NOTES = PListProjection.of( "Creator", "Sheets/*/GraphicsList/**/Notes" );
+    
+    public void testProjection() throws Exception {
+        Map<?,?> plist = (Map<?,?>) parse( NOTES );
+        
+        assertEquals( 2, plist.size() );
+        assertEquals( "nickmain", plist.get( "Creator" ) );
+        
+        Map<?,?> sheet = (Map<?,?>) ((List<?>) plist.get( "Sheets" )).get( 0 );
+        assertEquals( Collections.singleton( "GraphicsList" ), sheet.keySet() );
+        
+        List<?> graphics = (List<?>) sheet.get( "GraphicsList" );
+        assertEquals( 2, graphics.size() );
+        
+        //leaves on the way to a match are dropped, containers are kept
+        Map<?,?> first = (Map<?,?>) graphics.get( 0 );
+        assertEquals( new HashSet<String>( Arrays.asList( "Style", "Notes" ) ), first.keySet() );
+        assertEquals( "note", first.get( "Notes" ) );
+        
+        Map<?,?> group = (Map<?,?>) graphics.get( 1 );
+        Map<?,?> child = (Map<?,?>) ((List<?>) group.get( "Graphics" )).get( 0 );
+        assertEquals( Collections.singleton( "Notes" ), child.keySet() );
+        assertEquals( Arrays.asList( "x" ), child.get( "Notes" ) );
+    }
+    
+    public void testParsersAgree() throws Exception {
+        String[][] projections = {
+            { "Creator", "Sheets/*/GraphicsList/**/Notes" },
+            { "Sheets/*/GraphicsList/*/Style/stroke" },
+            { "**/ID", "**/Notes" },
+            { "Nothing" },
+            { "*/*/SheetTitle" }
+        };
+        
+        for( String[] paths : projections ) {
+            PListProjection projection = PListProjection.of( paths );
+            
+            Object pulled = parse( projection );
+            byte[] bytes  = PLIST.getBytes( "UTF-8" );
+            assertEquals( pulled, PListByteParser.parse( ByteBuffer.wrap( bytes ), projection ) );
+            
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            BinaryPListWriter.write( new PListPullParser().read( new ByteArrayInputStream( bytes ) ), binary );
+            assertEquals( pulled, BinaryPListParser.parse( ByteBuffer.wrap( binary.toByteArray() ), projection ) );
+        }
+    }
+    
+    public void testInvalidPath() {
+        try {
+            PListProjection.of( "Sheets//Notes" );
+            fail( "empty segments are not allowed" );
+        }
+        catch( IllegalArgumentException ex ) {
+            //expected
+        }
+    }
+    
+    public void testModel() throws Exception {
+        File file = new File( "test-diagrams/test-owl.graffle" );
+        OmniGraffleDoc full      = new OmniGraffleDoc( file );
+        OmniGraffleDoc projected = new OmniGraffleDoc( file, PListProjection.MODEL );
+        
+        assertEquals( full.creator(), projected.creator() );
+        assertEquals( full.sheets().size(), projected.sheets().size() );
+        
+        for( int i = 0; i < full.sheets().size(); i++ ) {
+            OGSheet a = full.sheets().get( i );
+            OGSheet b = projected.sheets().get( i );
+            
+            assertEquals( a.title(), b.title() );
+            assertEquals( a.notes(), b.notes() );
+            assertEquals( a.layers.length, b.layers.length );
+            assertGraphics( a.graphics(), b.graphics() );
+        }
+    }
+    
+    private void assertGraphics( List<OGGraphic> expected, List<OGGraphic> actual ) {
+        assertEquals( expected.size(), actual.size() );
+        
+        for( int i = 0; i < expected.size(); i++ ) {
+            OGGraphic a = expected.get( i );
+            OGGraphic b = actual.get( i );
+            
+            assertEquals( a.graphicClass(), b.graphicClass() );
+            assertEquals( a.id(), b.id() );
+            assertEquals( a.notes(), b.notes() );
+            assertEquals( a.text(), b.text() );
+            assertEquals( a.bounds(), b.bounds() );
+            assertEquals( a.strokePattern(), b.strokePattern() );
+            assertEquals( a.userProperties(), b.userProperties() );
+            
+            if( a.graphicClass() == OGGraphic.GraphicClass.Group ) {
+                assertGraphics( a.graphics(), b.graphics() );
+            }
+        }
+    }
+    
+    private static Object parse( PListProjection projection ) throws Exception {
+        return PListPullParser.parse( new ByteArrayInputStream( PLIST.getBytes( "UTF-8" ) ), projection );
+    }
+}
@@ -0,0 +1,89 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the pull parser
+ *
+ * @author nickmain
+ */
+public class PListPullParserTest extends TestCase {
+
+    private static final String PLIST = 
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n" +
+        "<plist version=\"1.0\">\n" +
+        "<dict>\n" +
+        "  <key> Name </key><string> a &amp; b </string>\n" +
+        "  <key>Count</key><integer> -42 </integer>\n" +
+        "  <key>Ratio</key><real>0.5</real>\n" +
+        "  <key>Yes</key><true/>\n" +
+        "  <key>Empty</key><array/>\n" +
+        "  <key>List</key>\n" +
+        "  <array>\n" +
+        "    <dict><key>ID</key><integer>3</integer></dict>\n" +
+        "    <string/>\n" +
+        "    <false/>\n" +
+        "  </array>\n" +
+        "</dict>\n" +
+        "</plist>\n";
+
+    @SuppressWarnings("unchecked")
+    public void testValues() throws Exception {
+        PListPullParser parser = new PListPullParser();
+        Map<String,Object> dict = (Map<String,Object>) parser.read( new ByteArrayInputStream( PLIST.getBytes( "UTF-8" ) ) );
+        
+        assertEquals( " a & b ", dict.get( "Name" ) );
+        assertEquals( -42, dict.get( "Count" ) );
+        assertEquals( 0.5, dict.get( "Ratio" ) );
+        assertEquals( Boolean.TRUE, dict.get( "Yes" ) );
+        assertTrue( ((List<Object>) dict.get( "Empty" )).isEmpty() );
+        
+        List<Object> list = (List<Object>) dict.get( "List" );
+        assertEquals( 3, list.size() );
+        assertEquals( 3, ((Map<String,Object>) list.get( 0 )).get( "ID" ) );
+        assertEquals( "", list.get( 1 ) );
+        assertEquals( Boolean.FALSE, list.get( 2 ) );
+    }
+    
+    public void testSameAsSaxParser() throws Exception {
+        PListPullParser parser = new PListPullParser();
+        
+        for( String name : new String[] { "test-owl.graffle", "test-src-extract.graffle" } ) {
+            File file = new File( "test-diagrams/" + name );
+            assertEquals( name, PListParser.parse( file ), parser.read( file ) );
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.epistem.diagram.model.*;
+
+/**
+ * Test the RTF decode cache
+ *
+ * @author nickmain
+ */
+public class RTFCacheTest extends TestCase {
+
+    private static final String RTF = "{\\rtf1\\ansi{\\fonttbl\\f0\\fswiss Helvetica;}\\f0\\fs24 hello\\par world}";
+    
+    public void testText() {
+        RTFCache cache = new RTFCache( 1000 );
+        
+        String text = cache.text( RTF );
+        assertEquals( RTFText.toText( RTF ), text );
+        assertSame( text, cache.text( new String( RTF ) ) );
+        assertEquals( 1, cache.hits() );
+        assertEquals( 1, cache.misses() );
+        assertEquals( 1, cache.size() );
+        
+        assertNull( cache.text( null ) );
+        
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertEquals( text, cache.text( RTF ) );
+        assertEquals( 2, cache.misses() );
+    }
+    
+    public void testEviction() {
+        RTFCache cache = new RTFCache( 16 * 100 );
+        
+        for( int i = 0; i < 1000; i++ ) {
+            String rtf = "{\\rtf1 label " + i + "}";
+            assertEquals( RTFText.toText( rtf ), cache.text( rtf ) );
+        }
+        
+        assertEquals( 1000, cache.misses() );
+        assertTrue( cache.size() < 200 );
+        
+        //the most recent entry is still there
+        cache.text( "{\\rtf1 label 999}" );
+        assertEquals( 1, cache.hits() );
+    }
+    
+    public void testUnbalanced() {
+        RTFCache cache = new RTFCache( 1000 );
+        try {
+            cache.text( "{\\rtf1 text}}" );
+            fail( "extra close group should be rejected" );
+        }
+        catch( IllegalArgumentException ex ) {
+            //expected
+        }
+        
+        assertEquals( 0, cache.size() );
+    }
+    
+    public void testShared() {
+        assertSame( RTFCache.shared(), RTFCache.shared() );
+        
+        long misses = RTFCache.shared().misses();
+        String rtf = "{\\rtf1 shared " + System.nanoTime() + "}";
+        assertEquals( OGUtils.unRTF( rtf ), OGUtils.unRTF( rtf ) );
+        assertEquals( misses + 1, RTFCache.shared().misses() );
+    }
+    
+    public void testSharedShapeText() throws Exception {
+        String rtf = "{\\rtf1 shape " + System.nanoTime() + "}";
+        
+        Map<String,Object> layer = new HashMap<String,Object>();
+        layer.put( "Name", "Layer 1" );
+        
+        List<Object> graphics = new ArrayList<Object>();
+        for( int id = 1; id <= 2; id++ ) {
+            Map<String,Object> text = new HashMap<String,Object>();
+            text.put( "Text", rtf );
+            
+            Map<String,Object> graphic = new HashMap<String,Object>();
+            graphic.put( "Class", "ShapedGraphic" );
+            graphic.put( "ID", id );
+            graphic.put( "Bounds", "{{" + id * 100 + ", 0}, {50, 50}}" );
+            graphic.put( "Text", text );
+            graphics.add( graphic );
+        }
+        
+        Map<String,Object> plist = new HashMap<String,Object>();
+        plist.put( "Layers", Arrays.asList( (Object) layer ) );
+        plist.put( "GraphicsList", graphics );
+        plist.put( "BackgroundGraphic", new HashMap<String,Object>() );
+        
+        File file = File.createTempFile( "shapes", ".graffle" );
+        try {
+            BinaryPListWriter.write( plist, file );
+            Diagram diagram = new Diagram( new OmniGraffleDoc( file ) );
+            
+            List<Shape> shapes = new ArrayList<Shape>();
+            for( Page page : diagram.pages ) {
+                for( Graphic graphic : page.rootGraphics ) {
+                    if( graphic instanceof Shape ) shapes.add( (Shape) graphic );
+                }
+            }
+            assertEquals( 2, shapes.size() );
+            
+            long misses = RTFCache.shared().misses();
+            StyledText text = shapes.get( 0 ).richText();
+            assertSame( text, shapes.get( 1 ).richText() );
+            assertEquals( misses + 1, RTFCache.shared().misses() );
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
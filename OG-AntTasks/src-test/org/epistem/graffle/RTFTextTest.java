@@ -0,0 +1,109 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.*;
+
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.rtf.RTFEditorKit;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the RTF text extractor against the Swing RTF reader
+ *
+ * @author nickmain
+ */
+public class RTFTextTest extends TestCase {
+
+    private static final String[] SAMPLES = {
+        "{\\rtf1\\ansi\\ansicpg1252\\cocoartf1038\\cocoasubrtf360\n" +
+        "{\\fonttbl\\f0\\fswiss\\fcharset0 Helvetica;}\n" +
+        "{\\colortbl;\\red255\\green255\\blue255;}\n" +
+        "\\pard\\tx560\\tx1120\\ql\\qnatural\\pardirnatural\n\n" +
+        "\\f0\\fs24 \\cf0 first line\\\nsecond\\tab line}",
+        
+        "{\\rtf1\\mac\\ansicpg10000 \\'8e\\'e9 caf\\u233 e \\uc2\\u8226 xx! \\{braces\\}\\par}",
+        "{\\rtf1 {\\*\\expandedcolortbl;;}{\\field{\\*\\fldinst HYPERLINK \"x\"}{\\fldrslt link}}text}",
+        "{\\rtf1\\ansi \\'80\\'93 \\emdash\\~\\bin3 abc done}",
+        "{\\rtf1 no closing brace",
+        "plain text without rtf",
+        "",
+    };
+    
+    public void testSamples() throws Exception {
+        for( String rtf : SAMPLES ) {
+            assertEquals( rtf, swing( rtf ), RTFText.toText( rtf ) );
+        }
+    }
+    
+    public void testDiagrams() throws Exception {
+        List<String> texts = new ArrayList<String>();
+        collect( PListParser.parseEager( new File( "test-diagrams/test-owl.graffle" ) ), texts );
+        collect( PListParser.parseEager( new File( "test-diagrams/test-src-extract.graffle" ) ), texts );
+        assertFalse( texts.isEmpty() );
+        
+        for( String rtf : texts ) {
+            assertEquals( rtf, swing( rtf ), RTFText.toText( rtf ) );
+        }
+    }
+    
+    public void testUnbalanced() {
+        try {
+            RTFText.toText( "{\\rtf1 x}}" );
+            fail( "extra close group should be rejected" );
+        }
+        catch( IllegalArgumentException ex ) {
+            //expected
+        }
+    }
+    
+    //the text and notes in a plist
+    static void collect( Object plist, List<String> texts ) {
+        if( plist instanceof Map ) {
+            for( Map.Entry<?,?> entry : ((Map<?,?>) plist).entrySet() ) {
+                Object key = entry.getKey();
+                if( ( key.equals( "Text" ) || key.equals( "Notes" ) ) && entry.getValue() instanceof String ) {
+                    texts.add( (String) entry.getValue() );
+                }
+                collect( entry.getValue(), texts );
+            }
+        }
+        else if( plist instanceof List ) {
+            for( Object value : (List<?>) plist ) collect( value, texts );
+        }
+    }
+    
+    static String swing( String rtf ) throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        new RTFEditorKit().read( new StringReader( rtf ), doc, 0 );
+        return doc.getText( 0, doc.getLength() );
+    }
+}
@@ -0,0 +1,101 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.epistem.graffle.PListByteParser.Laziness;
+
+/**
+ * Test the string value pool
+ *
+ * @author nickmain
+ */
+public class StringPoolTest extends TestCase {
+
+    public void testIntern() {
+        StringPool pool = new StringPool( 100 );
+        
+        String yes = pool.intern( new StringBuilder( "YES" ) );
+        assertEquals( "YES", yes );
+        assertSame( yes, pool.intern( "YES" ) );
+        assertSame( yes, pool.intern( new StringBuilder( "YES" ) ) );
+        assertEquals( 2, pool.hits() );
+        assertEquals( 1, pool.misses() );
+        
+        //long strings are not pooled
+        char[] chars = new char[ StringPool.MAX_LENGTH + 1 ];
+        Arrays.fill( chars, 'x' );
+        String text = new String( chars );
+        assertNotSame( pool.intern( new StringBuilder( text ) ), pool.intern( new StringBuilder( text ) ) );
+    }
+    
+    public void testEviction() {
+        StringPool pool = new StringPool( 16 );
+        
+        //more strings than slots - every lookup still returns an equal string
+        for( int round = 0; round < 3; round++ ) {
+            for( int i = 0; i < 1000; i++ ) {
+                assertEquals( "value" + i, pool.intern( new StringBuilder( "value" ).append( i ) ) );
+            }
+        }
+        assertTrue( pool.misses() > 2000 );
+    }
+    
+    public void testParsers() throws Exception {
+        byte[] bytes = "<plist><array><string>YES</string><string>YES</string><dict><key>A</key><string>YES</string></dict></array></plist>".getBytes( "UTF-8" );
+        
+        PListParser.setStringPool( new StringPool( 1 << 16 ) );
+        try {
+            List<?> pulled = (List<?>) new PListPullParser().read( new ByteArrayInputStream( bytes ) );
+            List<?> lexed  = (List<?>) PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE );
+            
+            assertSame( pulled.get( 0 ), pulled.get( 1 ) );
+            assertSame( pulled.get( 0 ), ((Map<?,?>) pulled.get( 2 )).get( "A" ) );
+            assertSame( pulled.get( 0 ), lexed.get( 0 ) );
+            
+            //shared between documents
+            File file = new File( "test-diagrams/test-owl.graffle" );
+            Map<?,?> first  = (Map<?,?>) PListParser.parse( file );
+            Map<?,?> second = (Map<?,?>) PListParser.parseEager( file );
+            assertEquals( first, second );
+            assertSame( first.get( "Creator" ), second.get( "Creator" ) );
+        }
+        finally {
+            PListParser.setStringPool( null );
+        }
+        
+        List<?> unpooled = (List<?>) PListByteParser.parse( ByteBuffer.wrap( bytes ), Laziness.NONE );
+        assertNotSame( unpooled.get( 0 ), unpooled.get( 1 ) );
+    }
+}
@@ -0,0 +1,120 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.StringReader;
+import java.util.*;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import javax.swing.text.rtf.RTFEditorKit;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the styled text model
+ *
+ * @author nickmain
+ */
+public class StyledTextTest extends TestCase {
+
+    private static final String RTF = 
+        "{\\rtf1\\ansi\\ansicpg1252\\cocoartf1038\\cocoasubrtf360\n" +
+        "{\\fonttbl\\f0\\fswiss\\fcharset0 Helvetica;\\f1\\fnil\\fcharset0 Monaco;}\n" +
+        "{\\colortbl;\\red255\\green255\\blue255;\\red255\\green0\\blue0;}\n" +
+        "\\pard\\tx560\\ql\\qnatural\n\n" +
+        "\\f0\\fs24 \\cf0 plain {\\b bold} {\\i\\cf2 red} \\f1\\fs20 mono\\\n" +
+        "again}";
+    
+    public void testRuns() {
+        StyledText text = RTFText.toStyledText( RTF );
+        assertEquals( "plain bold red mono\nagain\n", text.text() );
+        assertEquals( RTFText.toText( RTF ), text.text() );
+        
+        TextStyle plain = text.styleAt( 0 );
+        assertEquals( "Helvetica", plain.fontFamily() );
+        assertEquals( 12, plain.fontSize() );
+        assertFalse( plain.isBold() );
+        assertEquals( Color.BLACK, plain.color() );
+        
+        TextStyle bold = text.styleAt( text.text().indexOf( "bold" ) );
+        assertTrue( bold.isBold() );
+        
+        TextStyle red = text.styleAt( text.text().indexOf( "red" ) );
+        assertTrue( red.isItalic() );
+        assertEquals( Color.RED, red.color() );
+        
+        TextStyle mono = text.styleAt( text.text().indexOf( "mono" ) );
+        assertEquals( "Monaco", mono.fontFamily() );
+        assertEquals( 10, mono.fontSize() );
+        
+        //the spaces between the groups are plain again
+        assertSame( plain, text.styleAt( text.text().indexOf( "bold" ) + 4 ) );
+        
+        //runs cover the text, adjacent runs differ
+        assertEquals( 0, text.runStart( 0 ) );
+        assertEquals( text.text().length(), text.runEnd( text.runCount() - 1 ) );
+        for( int i = 1; i < text.runCount(); i++ ) {
+            assertEquals( text.runEnd( i - 1 ), text.runStart( i ) );
+            assertNotSame( text.runStyle( i - 1 ), text.runStyle( i ) );
+        }
+        
+        //styles are shared between texts
+        assertSame( mono, RTFText.toStyledText( RTF ).styleAt( text.text().indexOf( "mono" ) ) );
+    }
+    
+    public void testStyledDocument() throws Exception {
+        List<String> texts = new ArrayList<String>( Arrays.asList( RTF ) );
+        RTFTextTest.collect( PListParser.parseEager( new File( "test-diagrams/test-owl.graffle" ) ), texts );
+        
+        //same text and character attributes as the Swing reader
+        for( String rtf : texts ) {
+            DefaultStyledDocument expected = new DefaultStyledDocument();
+            new RTFEditorKit().read( new StringReader( rtf ), expected, 0 );
+            
+            StyledDocument actual = RTFText.toStyledText( rtf ).toStyledDocument();
+            assertEquals( expected.getText( 0, expected.getLength() ), actual.getText( 0, actual.getLength() ) );
+            
+            for( int i = 0; i < expected.getLength(); i++ ) {
+                AttributeSet a = expected.getCharacterElement( i ).getAttributes();
+                AttributeSet b = actual.getCharacterElement( i ).getAttributes();
+                
+                assertEquals( StyleConstants.getFontFamily( a ), StyleConstants.getFontFamily( b ) );
+                assertEquals( StyleConstants.getFontSize( a ), StyleConstants.getFontSize( b ) );
+                assertEquals( StyleConstants.isBold( a ), StyleConstants.isBold( b ) );
+                assertEquals( StyleConstants.isItalic( a ), StyleConstants.isItalic( b ) );
+                assertEquals( StyleConstants.isUnderline( a ), StyleConstants.isUnderline( b ) );
+                assertEquals( StyleConstants.getForeground( a ), StyleConstants.getForeground( b ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the table layout builder
+ *
+ * @author nickmain
+ */
+public class TableGridTest extends TestCase {
+
+    private static OGGraphic cell( String bounds ) {
+        Map<String,Object> dict = new HashMap<String,Object>();
+        dict.put( "Bounds", bounds );
+        return new OGGraphic( null, null, dict );
+    }
+    
+    public void testLayout() {
+        OGGraphic a = cell( "{{0, 0}, {50, 20}}" );
+        OGGraphic b = cell( "{{50.2, 0.1}, {50, 20}}" );
+        OGGraphic c = cell( "{{0.3, 20}, {50, 20}}" );
+        OGGraphic d = cell( "{{50, 19.9}, {50, 20}}" );
+        
+        OGGraphic[][] grid = TableGrid.build( Arrays.asList( d, c, b, a ), TableGrid.TOLERANCE );
+        assertEquals( 2, grid.length );
+        assertEquals( 2, grid[0].length );
+        assertSame( a, grid[0][0] );
+        assertSame( b, grid[0][1] );
+        assertSame( c, grid[1][0] );
+        assertSame( d, grid[1][1] );
+    }
+    
+    public void testMissingCell() {
+        OGGraphic a = cell( "{{0, 0}, {10, 10}}" );
+        OGGraphic b = cell( "{{10, 0}, {10, 10}}" );
+        OGGraphic c = cell( "{{10, 10}, {10, 10}}" );
+        
+        OGGraphic[][] grid = TableGrid.build( Arrays.asList( a, b, c ), TableGrid.TOLERANCE );
+        assertSame( a, grid[0][0] );
+        assertSame( b, grid[0][1] );
+        assertNull( grid[1][0] );
+        assertSame( c, grid[1][1] );
+    }
+    
+    public void testEmpty() {
+        assertEquals( 0, TableGrid.build( new ArrayList<OGGraphic>(), TableGrid.TOLERANCE ).length );
+    }
+}
@@ -0,0 +1,140 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.io;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the pipelined gzip stream
+ *
+ * @author nickmain
+ */
+public class PipelinedGZIPInputStreamTest extends TestCase {
+
+    private byte[] data;
+    private byte[] compressed;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        
+        data = new byte[ 100000 ];
+        Random random = new Random( 42 );
+        for( int i = 0; i < data.length; i++ ) data[i] = (byte) ( 'a' + random.nextInt( 8 ) );
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream( bytes );
+        out.write( data );
+        out.close();
+        compressed = bytes.toByteArray();
+    }
+    
+    public void testInflate() throws Exception {
+        //small buffers so that the ring wraps many times
+        InputStream in = new PipelinedGZIPInputStream( new ByteArrayInputStream( compressed ), 1000, 2 );
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write( in.read() );
+        byte[] buffer = new byte[ 777 ];
+        int count;
+        while( ( count = in.read( buffer ) ) >= 0 ) {
+            out.write( buffer, 0, count );
+        }
+        in.close();
+        
+        assertTrue( Arrays.equals( data, out.toByteArray() ) );
+    }
+    
+    public void testCorrupt() throws Exception {
+        byte[] corrupt = Arrays.copyOf( compressed, compressed.length / 2 );
+        InputStream in = new PipelinedGZIPInputStream( new ByteArrayInputStream( corrupt ), 1000, 2 );
+        
+        try {
+            byte[] buffer = new byte[ 1000 ];
+            while( in.read( buffer ) >= 0 ) { /*drain*/ }
+            fail( "truncated data should fail" );
+        }
+        catch( IOException ex ) {
+            //expected
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    public void testUncheckedFailure() throws Exception {
+        //fails after half of the compressed data has been read
+        InputStream failing = new ByteArrayInputStream( compressed ) {
+            @Override public synchronized int read( byte[] b, int off, int len ) {
+                if( pos >= compressed.length / 2 ) throw new IllegalStateException( "source failed" );
+                return super.read( b, off, Math.min( len, 100 ) );
+            }
+        };
+        InputStream in = new PipelinedGZIPInputStream( failing, 1000, 2 );
+        
+        try {
+            byte[] buffer = new byte[ 1000 ];
+            while( in.read( buffer ) >= 0 ) { /*drain*/ }
+            fail( "failure while inflating should not read as the end of the data" );
+        }
+        catch( IllegalStateException ex ) {
+            assertEquals( "source failed", ex.getMessage() );
+        }
+        
+        //the failure is reported again rather than taken as the end
+        try {
+            in.read();
+            fail( "failure should be sticky" );
+        }
+        catch( IllegalStateException ex ) {
+            //expected
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    public void testEarlyClose() throws Exception {
+        InputStream in = new PipelinedGZIPInputStream( new ByteArrayInputStream( compressed ), 1000, 2 );
+        assertEquals( data[0], (byte) in.read() );
+        in.close();
+        
+        try {
+            in.read();
+            fail( "closed stream should not be readable" );
+        }
+        catch( IOException ex ) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the incremental base64 decoder
+ *
+ * @author nickmain
+ */
+public class Base64Test extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        Random random = new Random( 3 );
+        for( int length = 0; length < 100; length++ ) {
+            byte[] data = new byte[ length ];
+            random.nextBytes( data );
+            
+            String encoded = Base64.encode( data );
+            assertTrue( Arrays.equals( data, Base64.decode( encoded ) ) );
+            assertTrue( Arrays.equals( data, readerDecode( encoded ) ) );
+            
+            //in pieces of every size
+            char[] chars = encoded.toCharArray();
+            Base64.Decoder decoder = new Base64.Decoder();
+            for( int piece = 1; piece < 9; piece++ ) {
+                for( int i = 0; i < chars.length; i += piece ) {
+                    decoder.decode( chars, i, Math.min( piece, chars.length - i ) );
+                }
+                assertTrue( Arrays.equals( data, decoder.toByteArray() ) );
+            }
+            
+            byte[] ascii = ( "\n\t" + encoded + " \n" ).getBytes( "US-ASCII" );
+            decoder.decode( ByteBuffer.wrap( ascii ), 0, ascii.length );
+            assertTrue( Arrays.equals( data, decoder.toByteArray() ) );
+        }
+    }
+    
+    public void testPadding() throws Exception {
+        //padding in the middle of the input is tolerated, as by the reader
+        String[] inputs = { "QQ==QUJD", "QUI=", "QQ=A", "QUJD" };
+        for( String input : inputs ) {
+            assertTrue( input, Arrays.equals( readerDecode( input ), Base64.decode( input ) ) );
+        }
+    }
+    
+    public void testInvalid() throws Exception {
+        String[] inputs = { "QUJ", "Q===", "QU!D", "=QUJ" };
+        for( String input : inputs ) {
+            Base64.Decoder decoder = new Base64.Decoder();
+            try {
+                decoder.decode( input );
+                decoder.toByteArray();
+                fail( input );
+            }
+            catch( IOException ex ) {
+                //expected
+            }
+            
+            //the decoder can be used again
+            decoder.decode( "QUJD" );
+            assertEquals( "ABC", new String( decoder.toByteArray(), "US-ASCII" ) );
+        }
+    }
+    
+    private static byte[] readerDecode( String base64 ) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64.decode( new StringReader( base64 ), out );
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the int keyed map
+ *
+ * @author nickmain
+ */
+public class IntMapTest extends TestCase {
+
+    public void testPutGet() {
+        IntMap<String> map = new IntMap<String>();
+        assertNull( map.get( 0 ) );
+        
+        assertNull( map.put( 0, "zero" ) );
+        assertNull( map.put( -5, "minus five" ) );
+        assertEquals( "zero", map.put( 0, "nought" ) );
+        
+        assertEquals( "nought", map.get( 0 ) );
+        assertEquals( "minus five", map.get( -5 ) );
+        assertTrue( map.containsKey( -5 ) );
+        assertFalse( map.containsKey( 5 ) );
+        assertEquals( 2, map.size() );
+        
+        try {
+            map.put( 1, null );
+            fail( "null value should be rejected" );
+        }
+        catch( NullPointerException ex ) {
+            //expected
+        }
+    }
+    
+    public void testAgainstHashMap() {
+        IntMap<Integer>        map      = new IntMap<Integer>( 4 );
+        Map<Integer,Integer>   expected = new HashMap<Integer,Integer>();
+        
+        Random random = new Random( 7 );
+        for( int i = 0; i < 20000; i++ ) {
+            int key = ( i % 2 == 0 ) ? random.nextInt( 5000 ) : random.nextInt();
+            assertEquals( expected.put( key, i ), map.put( key, i ) );
+        }
+        
+        assertEquals( expected.size(), map.size() );
+        for( Map.Entry<Integer,Integer> entry : expected.entrySet() ) {
+            assertEquals( entry.getValue(), map.get( entry.getKey() ) );
+        }
+        
+        int[] keys = map.keys();
+        assertEquals( expected.size(), keys.length );
+        for( int i = 1; i < keys.length; i++ ) assertTrue( keys[ i - 1 ] < keys[i] );
+        
+        List<Integer> values = new ArrayList<Integer>( map.values() );
+        List<Integer> expectedValues = new ArrayList<Integer>( expected.values() );
+        Collections.sort( values );
+        Collections.sort( expectedValues );
+        assertEquals( expectedValues, values );
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.tools.ant.Task;
 import org.epistem.diagram.model.Diagram;
 import org.epistem.diagram.owl.OWLEmitter;
 import org.epistem.graffle.OmniGraffleDoc;
+import org.epistem.graffle.PListProjection;
 
 /**
  * ANT task to generate an ontology from an Omnigraffle diagram
@@ -65,7 +66,7 @@ public class OWLEmitterAntTask extends Task {
 
         try {
             log( "Loading Omnigraffle diagram from " + diagram.getName() + "  ..." );
-            OWLEmitter emitter = new OWLEmitter( new Diagram( new OmniGraffleDoc( diagram )));
+            OWLEmitter emitter = new OWLEmitter( new Diagram( new OmniGraffleDoc( diagram, PListProjection.MODEL )));
             
             log( "Generating OWL2 ontology ..." );
             emitter.processDiagram();
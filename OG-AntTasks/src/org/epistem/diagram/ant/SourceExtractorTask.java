@@ -34,6 +34,7 @@ import org.apache.tools.ant.Task;
 import org.epistem.diagram.literate.SourceFileExtractor;
 import org.epistem.diagram.model.Diagram;
 import org.epistem.graffle.OmniGraffleDoc;
+import org.epistem.graffle.PListProjection;
 
 /**
  * Ant task to extract source code from a diagram and write to target files.
@@ -67,7 +68,7 @@ public class SourceExtractorTask extends Task {
         
         OmniGraffleDoc doc;
         try {
-            doc = new OmniGraffleDoc( ogFile );
+            doc = new OmniGraffleDoc( ogFile, PListProjection.MODEL );
         }
         catch( Exception e ) {
             throw new BuildException( e );
@@ -143,7 +143,7 @@ public class SourceFileExtractor extends DiagramVisitor.Impl {
             if( fileSrc == null ) fileSrcs.put( fileName, fileSrc = new ArrayList<String>() );
             
             for( Shape s : shapes ) {
-                fileSrc.add( s.text );
+                fileSrc.add( s.text() );
             }
         }
      }
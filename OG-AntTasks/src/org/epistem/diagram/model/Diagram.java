@@ -30,7 +30,6 @@ package org.epistem.diagram.model;
 import java.io.File;
 import java.util.*;
 
-import org.epistem.graffle.OGSheet;
 import org.epistem.graffle.OmniGraffleDoc;
 
 /**
@@ -40,11 +39,42 @@ import org.epistem.graffle.OmniGraffleDoc;
  */
 public class Diagram {
 
+    /**
+     * Chooses the pages to model
+     */
+    public static interface PageSelector {
+        
+        /**
+         * @param index the sheet index
+         * @param title the sheet title
+         * @return true to model the page
+         */
+        public boolean select( int index, String title );
+    }
+    
+    /** Selects every page */
+    public static final PageSelector ALL_PAGES = new PageSelector() {
+        public boolean select( int index, String title ) { return true; }
+    };
+    
+    /**
+     * Select the pages with the given titles
+     */
+    public static PageSelector titled( String... titles ) {
+        final Set<String> titleSet = new HashSet<String>( Arrays.asList( titles ) );
+        return new PageSelector() {
+            public boolean select( int index, String title ) { 
+                return titleSet.contains( title ); 
+            }
+        };
+    }
+
     public final Map<String,Object> userData = new HashMap<String, Object>();
     
     public final File file;
     
-    public final Collection<Page> pages = new HashSet<Page>();
+    /** In document order */
+    public final Collection<Page> pages = new LinkedHashSet<Page>();
     
     public final List<String> authors;
     public final List<String> keywords;
@@ -71,6 +101,14 @@ public class Diagram {
     }
     
     public Diagram( OmniGraffleDoc doc ) {
+        this( doc, ALL_PAGES );
+    }
+    
+    /**
+     * Model the selected pages of a document. The other sheets are not
+     * decoded.
+     */
+    public Diagram( OmniGraffleDoc doc, PageSelector selector ) {
     
         file = doc.file();
         
@@ -85,8 +123,11 @@ public class Diagram {
         subject       = doc.subject();
         version       = doc.version();        
         
-        for( OGSheet sheet : doc.sheets() ) {        
-            pages.add( new Page( sheet, this ) );
+        int count = doc.sheetCount();
+        for( int i = 0; i < count; i++ ) {
+            if( ! selector.select( i, doc.sheetTitle( i ) ) ) continue;
+            
+            pages.add( new Page( doc.sheet( i ), this ) );
         }
     }
 }
@@ -27,7 +27,6 @@
 --------------------------------------------------------------------------------*/
 package org.epistem.diagram.model;
 
-import java.awt.geom.Rectangle2D;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -70,9 +69,9 @@ public abstract class Graphic {
         
         page.graphics.put( ogg.id(), this );
         
-        Rectangle2D bounds = ogg.bounds();
-        x = bounds.getCenterX();
-        y = bounds.getCenterY();
+        double[] bounds = ogg.boundsArray();
+        x = bounds[0] + bounds[2] / 2.0;
+        y = bounds[1] + bounds[3] / 2.0;
         
         OGLayer ogLayer = ogg.layer();
         if( ogLayer != null ) {
@@ -45,8 +45,11 @@ public class Line extends Graphic implements GraphicContainer, Connector {
     public Graphic tail;
     public final String headArrow;
     public final String tailArrow;
+    /** A read-only view of the packed points */
     public final List<Point2D> points;
     
+    private final double[] pointArray; //x, y pairs
+    
     public HashSet<Line> lineGroup;
     
     /** Ordered, from tail to head */
@@ -90,7 +93,16 @@ public class Line extends Graphic implements GraphicContainer, Connector {
         
         headArrow = ogg.headArrow();
         tailArrow = ogg.tailArrow();
-        points    = ogg.points();
+        
+        pointArray = ogg.pointArray();
+        points     = new PointList( pointArray );
+    }
+    
+    /**
+     * Get the points as a new array of x, y pairs
+     */
+    public double[] pointArray() {
+        return pointArray.clone();
     }
 
     /** @see org.epistem.diagram.model.Graphic#init() */
@@ -134,4 +146,26 @@ public class Line extends Graphic implements GraphicContainer, Connector {
     public String toString() {
         return "Line";
     }
+    
+    /**
+     * Points backed by packed coordinates
+     */
+    private static final class PointList extends AbstractList<Point2D> implements RandomAccess {
+        private final double[] coords;
+        
+        PointList( double[] coords ) {
+            this.coords = coords;
+        }
+        
+        @Override
+        public Point2D get( int index ) {
+            if( index < 0 || index >= size() ) throw new IndexOutOfBoundsException( "" + index );
+            return new Point2D.Double( coords[ index * 2 ], coords[ index * 2 + 1 ] );
+        }
+        
+        @Override
+        public int size() {
+            return coords.length / 2;
+        }
+    }
 }
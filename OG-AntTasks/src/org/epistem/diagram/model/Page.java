@@ -32,6 +32,7 @@ import java.util.*;
 import org.epistem.graffle.OGGraphic;
 import org.epistem.graffle.OGLayer;
 import org.epistem.graffle.OGSheet;
+import org.epistem.util.IntMap;
 
 /**
  * A page within a document
@@ -67,7 +68,7 @@ public class Page implements GraphicContainer {
         visitor.visitPageEnd( this );
     }
     
-    Map<Integer, Graphic> graphics;
+    IntMap<Graphic> graphics;
     
     Page( OGSheet sheet, Diagram diagram ) {
         
@@ -80,12 +81,14 @@ public class Page implements GraphicContainer {
             ogLayers.put( ogLayer, layer );
         }
         
-        graphics = new HashMap<Integer, Graphic>();
+        graphics = new IntMap<Graphic>();
         for( OGGraphic g : sheet.graphics()) {
             rootGraphics.add( Graphic.make( g, this, this ) );            
         }
         
-        for( Graphic g : graphics.values() ) {
+        //initialize in id order
+        for( int id : graphics.keys() ) {
+            Graphic g = graphics.get( id );
             g.init();
             g.ogg = null;
         }
@@ -32,9 +32,9 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 
-import javax.swing.text.DefaultStyledDocument;
-
 import org.epistem.graffle.OGGraphic;
+import org.epistem.graffle.RTFCache;
+import org.epistem.graffle.StyledText;
 
 /**
  * A shape
@@ -43,13 +43,15 @@ import org.epistem.graffle.OGGraphic;
  */
 public class Shape extends Graphic {
     
-    public final String text;
-    public final DefaultStyledDocument richText;
     public final Rectangle2D bounds;
     public final Collection<Shape> containedShapes    = new HashSet<Shape>();
     public final Collection<Shape> intersectingShapes = new HashSet<Shape>();
     public final Collection<Shape> containingShapes   = new HashSet<Shape>();
     
+    private final String rtf; //decoded on demand
+    private volatile StyledText richText;
+    private volatile String text;
+    
     /**
      * Accept a visitor
      */
@@ -67,9 +69,38 @@ public class Shape extends Graphic {
             g = kids.get( kids.size() - 1 );
         }
         
-        this.text     = g.text();
-        this.richText = g.styledText();
-        this.bounds   = g.bounds();
+        this.rtf    = g.rtf();
+        this.bounds = g.bounds();
+    }
+    
+    /**
+     * The plain text of the shape, without the trailing newline
+     * @return null if there is no text
+     */
+    public String text() {
+        String text = this.text;
+        if( text == null && rtf != null ) {
+            text = richText().text();
+            if( text.endsWith( "\n" ) ) text = text.substring( 0, text.length() - 1 );
+            this.text = text;
+        }
+        return text;
+    }
+    
+    /**
+     * The styled text of the shape. The RTF is parsed through the shared
+     * {@link RTFCache}, so shapes with the same RTF share one parse, and 
+     * the plain text is taken from the same parse.
+     * 
+     * @return null if there is no text
+     */
+    public StyledText richText() {
+        StyledText richText = this.richText;
+        if( richText == null && rtf != null ) {
+            richText = RTFCache.shared().styledText( rtf );
+            this.richText = richText;
+        }
+        return richText;
     }
 
     /** @see org.epistem.diagram.model.Graphic#init() */
@@ -86,6 +117,6 @@ public class Shape extends Graphic {
     
     @Override
     public String toString() {
-        return "Shape '" + text + "'";
+        return "Shape '" + text() + "'";
     }
 }
@@ -72,15 +72,18 @@ public class Table extends Graphic implements GraphicContainer {
     Table( OGGraphic ogg, GraphicContainer parent, Page page ) {
         super( ogg, parent, page );
         
-        OGGraphic[][] oggTable = ogg.table();
-        int colCount = oggTable.length;
-        int rowCount = oggTable[0].length;
+        OGGraphic[][] grid = ogg.tableGrid();
+        int rowCount = grid.length;
+        int colCount = grid[0].length;
         
         table = new Shape[ rowCount ][ colCount ];
         
         for( int row = 0; row < rowCount; row++ ) {
             for( int col = 0; col < colCount; col++ ) {
-                Shape s = new Shape( oggTable[ col ][ row ], this, page );
+                OGGraphic cell = grid[ row ][ col ];
+                if( cell == null ) continue;
+                
+                Shape s = new Shape( cell, this, page );
                 table[ row ][ col ] = s;
                 cells.add( s );
             }
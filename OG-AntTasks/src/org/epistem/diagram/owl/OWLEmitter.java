@@ -34,6 +34,7 @@ import java.util.*;
 
 import org.epistem.diagram.model.*;
 import org.epistem.graffle.OmniGraffleDoc;
+import org.epistem.graffle.PListProjection;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.io.DefaultOntologyFormat;
 import org.semanticweb.owlapi.io.OWLOntologyDocumentTarget;
@@ -70,7 +71,7 @@ public class OWLEmitter {
     public static OWLOntology loadOntology( File file, OWLOntologyManager manager ) {
         Diagram diagram;
         try {
-            diagram = new Diagram( new OmniGraffleDoc( file ) );
+            diagram = new Diagram( new OmniGraffleDoc( file, PListProjection.MODEL ) );
             OWLEmitter emitter = new OWLEmitter( diagram, manager );
             emitter.processDiagram();
             return emitter.getOntology();
@@ -180,8 +181,8 @@ public class OWLEmitter {
     /** Add SWRL rules */
     private void processRules() {
         for( Connector c: connectors( GraphicNote.rule ) ) {
-            String body = shape( c.getTail() ).text;
-            String head = shape( c.getHead() ).text;
+            String body = shape( c.getTail() ).text();
+            String head = shape( c.getHead() ).text();
             
             SWRLRule rule = factory.getSWRLRule( 
                                         parseAtoms( body, c.getTail() ), 
@@ -311,7 +312,7 @@ public class OWLEmitter {
                     IRI iri = IRI.create( uriFromShape( shape( conn.getHead() ) ) );
                     
                     OWLAnnotationProperty prop = factory.getOWLAnnotationProperty( IRI.create( "http://www.w3.org/2000/01/rdf-schema#comment" ) );
-                    OWLLiteral            val  = factory.getOWLLiteral( shape(g).text );
+                    OWLLiteral            val  = factory.getOWLLiteral( shape(g).text() );
                     OWLAnnotation         anno = factory.getOWLAnnotation( prop, val );
                     
                     addAxiom( factory.getOWLAnnotationAssertionAxiom( iri, anno ) );
@@ -326,7 +327,7 @@ public class OWLEmitter {
         
         for( Shape[] row : t.table ) {
             IRI iri = IRI.create( uriFromShape( row[0] ) );
-            String value = row[1].text;
+            String value = row[1].text();
             
             OWLAnnotationProperty prop = factory.getOWLAnnotationProperty( iri );
             OWLLiteral            val  = factory.getOWLLiteral( value );
@@ -339,7 +340,7 @@ public class OWLEmitter {
     /** Add imports */
     private void processImports() {
         for( Connector c : connectors( GraphicNote.ontology_import ) ) {
-            String importName = shape( c.getHead() ).text.trim();
+            String importName = shape( c.getHead() ).text().trim();
             
             if( importName.contains( ".graffle" ) ) {
                 File dir = diagram.file.getParentFile();
@@ -549,7 +550,7 @@ public class OWLEmitter {
     
     private OWLLiteral literalFor( Graphic g ) {
         if( g instanceof Shape ) {
-            return factory.getOWLLiteral( shape(g).text );
+            return factory.getOWLLiteral( shape(g).text() );
         }
         
         if( g instanceof Table ) {
@@ -565,7 +566,7 @@ public class OWLEmitter {
             Shape value = table[1][0];
             
             return factory.getOWLLiteral( 
-                               value.text.trim(), 
+                               value.text().trim(), 
                                factory.getOWLDatatype( IRI.create( uriFromShape( type ) )));
         }
         
@@ -969,8 +970,8 @@ public class OWLEmitter {
         if( !(conn instanceof Line )) throw error( "Cardinality must be a line", (Graphic) conn );
 
         for( Shape label : ((Line) conn).labels ) {
-            if( label.text != null && label.text.trim().startsWith( "[" )) {
-                return label.text.trim(); 
+            if( label.text() != null && label.text().trim().startsWith( "[" )) {
+                return label.text().trim(); 
             }
         }
         
@@ -1065,7 +1066,7 @@ public class OWLEmitter {
      * Get a URI from a shape
      */
     private String uriFromShape( Shape shape ) {
-        String text = shape.text;
+        String text = shape.text();
         if( text == null || (text = text.trim()).length() == 0 ) throw error( "Missing URI", shape );
         
         return uriFromString( text );
@@ -1251,7 +1252,7 @@ public class OWLEmitter {
             @Override public void visitShape( Shape shape ) {
                 if( ! "namespace".equals( shape.metadata.notes ) ) return;
                 
-                String text = shape.text;
+                String text = shape.text();
                 if( text == null || (text = text.trim()).length() == 0 ) {
                     throw error( "Blank namespace", shape );
                 }
@@ -0,0 +1,368 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import org.epistem.graffle.PListProjection.Node;
+
+/**
+ * A parser for OS X binary ("bplist00") PLISTs. Produces the same object
+ * graph as the XML parsers - integers that fit are Integer, reals are Double.
+ *
+ * The offset table and the objects are read by random access on the file
+ * channel.
+ *
+ * @author nickmain
+ */
+public class BinaryPListParser {
+
+    static final byte[] MAGIC = { 'b', 'p', 'l', 'i', 's', 't', '0', '0' };
+    
+    private static final int TRAILER_SIZE = 32;
+    
+    /** Seconds from the Unix epoch to the binary plist epoch (2001-01-01) */
+    static final long EPOCH_OFFSET = 978307200L;
+    
+    private final ByteBuffer buffer;
+    private final int    objectRefSize;
+    private final long[] offsets;
+    private final BitSet active = new BitSet();
+    private final CompactDict.Builder entries = new CompactDict.Builder();
+    private final StringPool pool = PListParser.stringPool();
+    
+    private BinaryPListParser( ByteBuffer buffer ) throws IOException {
+        this.buffer = buffer;
+        
+        int size = buffer.limit();
+        if( size < MAGIC.length + TRAILER_SIZE ) throw new IOException( "binary plist is truncated" );
+        
+        int trailer = size - TRAILER_SIZE;
+        int  offsetIntSize     = buffer.get( trailer + 6 ) & 0xff;
+        objectRefSize          = buffer.get( trailer + 7 ) & 0xff;
+        long objectCount       = buffer.getLong( trailer + 8 );
+        long offsetTableOffset = buffer.getLong( trailer + 24 );
+        
+        if( objectCount < 0 || objectCount > size 
+         || offsetTableOffset < 0 
+         || offsetTableOffset + objectCount * offsetIntSize > trailer ) {
+            throw new IOException( "binary plist trailer is invalid" );
+        }
+        
+        offsets = new long[ (int) objectCount ];
+        for( int i = 0; i < offsets.length; i++ ) {
+            offsets[i] = readUnsigned( (int) offsetTableOffset + i * offsetIntSize, offsetIntSize );
+        }
+    }
+    
+    /**
+     * Whether the given channel starts with the binary plist magic. The 
+     * channel position is not changed.
+     */
+    public static boolean isBinary( FileChannel channel ) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate( MAGIC.length );
+        while( magic.hasRemaining() ) {
+            if( channel.read( magic, magic.position() ) < 0 ) return false;
+        }
+        
+        return Arrays.equals( magic.array(), MAGIC );
+    }
+    
+    /**
+     * Whether the given stream starts with the binary plist magic. The 
+     * stream must support mark and is reset to where it was.
+     */
+    public static boolean isBinary( InputStream in ) throws IOException {
+        byte[] magic = new byte[ MAGIC.length ];
+        in.mark( magic.length );
+        try {
+            int count = 0;
+            while( count < magic.length ) {
+                int n = in.read( magic, count, magic.length - count );
+                if( n < 0 ) return false;
+                count += n;
+            }
+            return Arrays.equals( magic, MAGIC );
+        }
+        finally {
+            in.reset();
+        }
+    }
+    
+    /**
+     * Whether the given buffer starts with the binary plist magic
+     */
+    public static boolean isBinary( ByteBuffer buffer ) {
+        if( buffer.limit() < MAGIC.length ) return false;
+        
+        for( int i = 0; i < MAGIC.length; i++ ) {
+            if( buffer.get( i ) != MAGIC[i] ) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Parse a binary PLIST file.
+     * 
+     * @param file the file to parse
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parse( File file ) throws IOException {
+        FileInputStream in = new FileInputStream( file );
+        try {
+            return parse( in.getChannel() );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parse a binary PLIST from a file channel. The channel is not closed.
+     * 
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parse( FileChannel channel ) throws IOException {
+        ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        return parse( buffer );
+    }
+    
+    /**
+     * Parse a binary PLIST held in a buffer. The whole buffer, from zero to
+     * the limit, is the plist.
+     * 
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parse( ByteBuffer buffer ) throws IOException {
+        try {
+            BinaryPListParser parser = new BinaryPListParser( buffer );
+            return parser.readRef( buffer.getLong( buffer.limit() - TRAILER_SIZE + 16 ) );
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            throw new IOException( "binary plist is truncated" );
+        }
+    }
+    
+    /**
+     * Parse a binary PLIST held in a buffer, keeping only the parts in the
+     * projection
+     */
+    static Object parse( ByteBuffer buffer, PListProjection projection ) throws IOException {
+        try {
+            BinaryPListParser parser = new BinaryPListParser( buffer );
+            long top = buffer.getLong( buffer.limit() - TRAILER_SIZE + 16 );
+            if( ! parser.keeps( top, projection.root ) ) return null;
+            return parser.readRef( top, projection.root );
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            throw new IOException( "binary plist is truncated" );
+        }
+    }
+    
+    //read the object with the given index
+    private Object readRef( long index ) throws IOException {
+        return readRef( index, Node.ALL );
+    }
+    
+    //whether the object with the given index is kept - leaves are only kept
+    //if their whole subtree is
+    private boolean keeps( long index, Node node ) throws IOException {
+        if( node == null ) return false;
+        if( node == Node.ALL ) return true;
+        if( index < 0 || index >= offsets.length ) throw new IOException( "invalid object reference " + index );
+        
+        int type = ( buffer.get( (int) offsets[ (int) index ] ) & 0xff ) >> 4;
+        return type == 0xA || type == 0xC || type == 0xD;
+    }
+    
+    //read the projected object with the given index
+    private Object readRef( long index, Node node ) throws IOException {
+        if( index < 0 || index >= offsets.length ) throw new IOException( "invalid object reference " + index );
+        
+        int ref = (int) index;
+        if( active.get( ref ) ) throw new IOException( "circular object reference " + index );
+        active.set( ref );
+        
+        try {
+            return readAt( (int) offsets[ ref ], node );
+        }
+        finally {
+            active.clear( ref );
+        }
+    }
+    
+    //read the projected object at the given offset
+    private Object readAt( int offset, Node node ) throws IOException {
+        int marker = buffer.get( offset ) & 0xff;
+        int type   = marker >> 4;
+        int info   = marker & 0x0f;
+        
+        switch( type ) {
+            case 0x0: 
+                switch( info ) {
+                    case 0x8: return Boolean.FALSE;
+                    case 0x9: return Boolean.TRUE;
+                    default:  return null;
+                }
+                
+            case 0x1: return toInteger( readInteger( offset + 1, 1 << info ) );
+            case 0x8: return toInteger( readUnsigned( offset + 1, info + 1 ) ); //UID
+            
+            case 0x2: {
+                if( info == 2 ) return Double.valueOf( buffer.getFloat( offset + 1 ) );
+                if( info == 3 ) return Double.valueOf( buffer.getDouble( offset + 1 ) );
+                throw new IOException( "unsupported real size " + ( 1 << info ) );
+            }
+            
+            case 0x3: {
+                double seconds = buffer.getDouble( offset + 1 );
+                return new Date( (long) ( ( seconds + EPOCH_OFFSET ) * 1000 ) );
+            }
+            
+            case 0x4: {
+                int[] len = length( offset, info );
+                byte[] data = new byte[ len[0] ];
+                for( int i = 0; i < data.length; i++ ) data[i] = buffer.get( len[1] + i );
+                return data;
+            }
+            
+            case 0x5: {
+                int[] len = length( offset, info );
+                char[] chars = new char[ len[0] ];
+                for( int i = 0; i < chars.length; i++ ) chars[i] = (char) ( buffer.get( len[1] + i ) & 0xff );
+                return PListParser.string( new String( chars ), pool );
+            }
+            
+            case 0x6: {
+                int[] len = length( offset, info );
+                char[] chars = new char[ len[0] ];
+                for( int i = 0; i < chars.length; i++ ) chars[i] = buffer.getChar( len[1] + i * 2 );
+                return PListParser.string( new String( chars ), pool );
+            }
+            
+            case 0xA:
+            case 0xC: {
+                int[] len = length( offset, info );
+                List<Object> array = new ArrayList<Object>( len[0] );
+                Node element = node.element();
+                for( int i = 0; i < len[0]; i++ ) {
+                    long ref = readUnsigned( len[1] + i * objectRefSize, objectRefSize );
+                    if( keeps( ref, element ) ) array.add( readRef( ref, element ) );
+                }
+                return array;
+            }
+            
+            case 0xD: {
+                int[] len = length( offset, info );
+                int mark = entries.start();
+                int valueStart = len[1] + len[0] * objectRefSize;
+                for( int i = 0; i < len[0]; i++ ) {
+                    Object keyObj = readRef( readUnsigned( len[1] + i * objectRefSize, objectRefSize ) );
+                    String key    = KeyTable.SHARED.intern( String.valueOf( keyObj ) );
+                    Node   child  = node.child( key );
+                    
+                    long ref = readUnsigned( valueStart + i * objectRefSize, objectRefSize );
+                    if( ! keeps( ref, child ) ) continue;
+                    if( ! putNumber( key, ref, mark ) ) entries.put( key, readRef( ref, child ), mark );
+                }
+                return entries.build( mark );
+            }
+            
+            default: throw new IOException( "unsupported object type 0x" + Integer.toHexString( marker ) );
+        }
+    }
+    
+    //get the length and start of the content for an object - 
+    //the length is either in the marker or in a following integer object
+    private int[] length( int offset, int info ) throws IOException {
+        if( info != 0x0f ) return new int[] { info, offset + 1 };
+        
+        int marker = buffer.get( offset + 1 ) & 0xff;
+        if( ( marker >> 4 ) != 0x1 ) throw new IOException( "invalid length marker at " + offset );
+        
+        int size = 1 << ( marker & 0x0f );
+        long length = readInteger( offset + 2, size );
+        if( length < 0 || length > buffer.limit() ) throw new IOException( "invalid length at " + offset );
+        
+        return new int[] { (int) length, offset + 2 + size };
+    }
+    
+    //integers of 1, 2 or 4 bytes are unsigned, 8 and 16 bytes are signed
+    private long readInteger( int offset, int size ) {
+        if( size == 16 ) return buffer.getLong( offset + 8 ); 
+        if( size == 8  ) return buffer.getLong( offset ); 
+        return readUnsigned( offset, size );
+    }
+    
+    private long readUnsigned( int offset, int size ) {
+        long value = 0;
+        for( int i = 0; i < size; i++ ) {
+            value = ( value << 8 ) | ( buffer.get( offset + i ) & 0xff );
+        }
+        return value;
+    }
+    
+    //put the object with the given index into the innermost dict if it is
+    //a number that can be held unboxed
+    private boolean putNumber( String key, long index, int mark ) throws IOException {
+        if( index < 0 || index >= offsets.length ) throw new IOException( "invalid object reference " + index );
+        
+        int offset = (int) offsets[ (int) index ];
+        int marker = buffer.get( offset ) & 0xff;
+        int info   = marker & 0x0f;
+        
+        switch( marker >> 4 ) {
+            case 0x1: {
+                long value = readInteger( offset + 1, 1 << info );
+                if( value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ) return false;
+                entries.putInt( key, (int) value, mark );
+                return true;
+            }
+            
+            case 0x2: {
+                if( info == 2 ) entries.putReal( key, buffer.getFloat( offset + 1 ), mark );
+                else if( info == 3 ) entries.putReal( key, buffer.getDouble( offset + 1 ), mark );
+                else return false;
+                return true;
+            }
+            
+            default: return false;
+        }
+    }
+    
+    private static Object toInteger( long value ) {
+        if( value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ) return CompactDict.box( (int) value );
+        return Long.valueOf( value );
+    }
+}
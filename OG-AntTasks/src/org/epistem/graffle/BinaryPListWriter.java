@@ -0,0 +1,252 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes a PLIST object graph (as produced by the parsers) in the OS X
+ * binary ("bplist00") format. Equal strings and numbers are written once.
+ *
+ * @author nickmain
+ */
+public class BinaryPListWriter {
+
+    private final List<Object> objects = new ArrayList<Object>();
+    private final Map<Object,Integer> scalarRefs = new HashMap<Object, Integer>();
+    private final Map<Object,Integer> containerRefs = new IdentityHashMap<Object, Integer>();
+    private int objectRefSize;
+    
+    private BinaryPListWriter() {}
+    
+    /**
+     * Convert PLIST files to binary. The output may be the same as the input.
+     * 
+     * Usage: BinaryPListWriter input output
+     */
+    public static void main( String[] args ) throws Exception {
+        if( args.length != 2 ) {
+            System.err.println( "Usage: BinaryPListWriter input output" );
+            System.exit( 1 );
+        }
+        
+        write( PListPullParser.parse( new File( args[0] ) ), new File( args[1] ) );
+    }
+    
+    /**
+     * Write a PLIST to a file
+     * 
+     * @param plist a Map, List, byte[], PListData, Date, Double, Integer, Long,
+     *              String or Boolean
+     */
+    public static void write( Object plist, File file ) throws IOException {
+        OutputStream out = new BufferedOutputStream( new FileOutputStream( file ) );
+        try {
+            write( plist, out );
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Write a PLIST to a stream. The stream is not closed.
+     * 
+     * @param plist a Map, List, byte[], PListData, Date, Double, Integer, Long,
+     *              String or Boolean
+     */
+    public static void write( Object plist, OutputStream out ) throws IOException {
+        new BinaryPListWriter().writePList( plist, out );
+    }
+    
+    private void writePList( Object plist, OutputStream stream ) throws IOException {
+        int top = register( plist );
+        objectRefSize = sizeFor( objects.size() );
+        
+        DataOutputStream out = new DataOutputStream( stream );
+        out.write( BinaryPListParser.MAGIC );
+        
+        long[] offsets = new long[ objects.size() ];
+        for( int i = 0; i < offsets.length; i++ ) {
+            offsets[i] = out.size();
+            writeObject( objects.get( i ), out );
+        }
+        
+        long offsetTableOffset = out.size();
+        int offsetIntSize = sizeFor( offsetTableOffset );
+        for( long offset : offsets ) {
+            writeUnsigned( offset, offsetIntSize, out );
+        }
+        
+        //trailer
+        out.write( new byte[ 6 ] );
+        out.writeByte( offsetIntSize );
+        out.writeByte( objectRefSize );
+        out.writeLong( offsets.length );
+        out.writeLong( top );
+        out.writeLong( offsetTableOffset );
+        out.flush();
+    }
+    
+    //assign an object index to the object and its contents
+    private int register( Object obj ) throws IOException {
+        boolean container = isContainer( obj );
+        Map<Object,Integer> refs = container ? containerRefs : scalarRefs;
+        
+        Integer ref = refs.get( obj );
+        if( ref != null ) return ref;
+        
+        ref = objects.size();
+        objects.add( obj );
+        refs.put( obj, ref );
+        
+        if( obj instanceof Map ) {
+            for( Map.Entry<?,?> entry : ((Map<?,?>) obj).entrySet() ) {
+                register( entry.getKey() );
+                register( entry.getValue() );
+            }
+        }
+        else if( obj instanceof List ) {
+            for( Object item : (List<?>) obj ) register( item );
+        }
+        else if( ! ( obj == null
+                  || obj instanceof String 
+                  || obj instanceof Integer 
+                  || obj instanceof Long
+                  || obj instanceof Double
+                  || obj instanceof Boolean 
+                  || obj instanceof Date
+                  || obj instanceof byte[]
+                  || obj instanceof PListData ) ) {
+            throw new IOException( "cannot write " + obj.getClass().getName() + " to a plist" );
+        }
+        
+        return ref;
+    }
+    
+    private int ref( Object obj ) {
+        return ( isContainer( obj ) ? containerRefs : scalarRefs ).get( obj );
+    }
+    
+    //objects that are registered by identity
+    private static boolean isContainer( Object obj ) {
+        return obj instanceof Map || obj instanceof List || obj instanceof byte[] || obj instanceof PListData;
+    }
+    
+    private void writeObject( Object obj, DataOutputStream out ) throws IOException {
+        if( obj == null ) {
+            out.writeByte( 0x00 );
+        }
+        else if( obj instanceof Boolean ) {
+            out.writeByte( ((Boolean) obj) ? 0x09 : 0x08 );
+        }
+        else if( obj instanceof Integer || obj instanceof Long ) {
+            writeInteger( ((Number) obj).longValue(), out );
+        }
+        else if( obj instanceof Double ) {
+            out.writeByte( 0x23 );
+            out.writeDouble( (Double) obj );
+        }
+        else if( obj instanceof Date ) {
+            out.writeByte( 0x33 );
+            out.writeDouble( ((Date) obj).getTime() / 1000.0 - BinaryPListParser.EPOCH_OFFSET );
+        }
+        else if( obj instanceof byte[] || obj instanceof PListData ) {
+            byte[] data = obj instanceof PListData ? ((PListData) obj).bytes() : (byte[]) obj;
+            writeMarker( 0x4, data.length, out );
+            out.write( data );
+        }
+        else if( obj instanceof String ) {
+            String s = (String) obj;
+            
+            boolean ascii = true;
+            for( int i = 0; i < s.length() && ascii; i++ ) {
+                if( s.charAt( i ) > 0x7f ) ascii = false;
+            }
+            
+            if( ascii ) {
+                writeMarker( 0x5, s.length(), out );
+                out.writeBytes( s );
+            }
+            else {
+                writeMarker( 0x6, s.length(), out );
+                out.writeChars( s );
+            }
+        }
+        else if( obj instanceof List ) {
+            List<?> list = (List<?>) obj;
+            writeMarker( 0xA, list.size(), out );
+            for( Object item : list ) writeUnsigned( ref( item ), objectRefSize, out );
+        }
+        else if( obj instanceof Map ) {
+            Map<?,?> dict = (Map<?,?>) obj;
+            writeMarker( 0xD, dict.size(), out );
+            for( Object key : dict.keySet() ) writeUnsigned( ref( key ), objectRefSize, out );
+            for( Object value : dict.values() ) writeUnsigned( ref( value ), objectRefSize, out );
+        }
+    }
+    
+    //write an object marker with a length either inline or as a following integer
+    private void writeMarker( int type, int length, DataOutputStream out ) throws IOException {
+        if( length < 0x0f ) {
+            out.writeByte( ( type << 4 ) | length );
+        }
+        else {
+            out.writeByte( ( type << 4 ) | 0x0f );
+            writeInteger( length, out );
+        }
+    }
+    
+    //non-negative values are unsigned 1, 2 or 4 bytes - negative are 8 bytes
+    private void writeInteger( long value, DataOutputStream out ) throws IOException {
+        if( value < 0 || value > 0xffffffffL ) {
+            out.writeByte( 0x13 );
+            out.writeLong( value );
+            return;
+        }
+        
+        int size = sizeFor( value );
+        out.writeByte( 0x10 | Integer.numberOfTrailingZeros( size ) );
+        writeUnsigned( value, size, out );
+    }
+    
+    private static void writeUnsigned( long value, int size, DataOutputStream out ) throws IOException {
+        for( int shift = ( size - 1 ) * 8; shift >= 0; shift -= 8 ) {
+            out.writeByte( (int) ( value >>> shift ) );
+        }
+    }
+    
+    //the number of bytes (1, 2, 4 or 8) needed for an unsigned value
+    private static int sizeFor( long value ) {
+        if( value <= 0xffL ) return 1;
+        if( value <= 0xffffL ) return 2;
+        if( value <= 0xffffffffL ) return 4;
+        return 8;
+    }
+}
@@ -0,0 +1,335 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.*;
+
+/**
+ * A read-only map backed by parallel key and value arrays. Plist dicts are
+ * small and their keys are interned, so a linear scan is cheaper than 
+ * hashing and the map is much smaller than a HashMap.
+ * 
+ * Integer and real values are held unboxed. They are boxed when read 
+ * through the Map interface, but {@link #intValue} and {@link #doubleValue}
+ * read them directly.
+ *
+ * @author nickmain
+ */
+final class CompactDict extends AbstractMap<String,Object> {
+
+    private static final String[] NO_KEYS   = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    
+    //markers for unboxed values
+    private static final Object INTEGER = new Object();
+    private static final Object REAL    = new Object();
+    
+    //boxed integers for the common range of ids and indices
+    private static final Integer[] INTEGERS = new Integer[ 4096 ];
+    static {
+        for( int i = 0; i < INTEGERS.length; i++ ) INTEGERS[i] = Integer.valueOf( i );
+    }
+    
+    private final String[] keys;
+    private final Object[] values;
+    private final long[]   numbers; //null if there are no unboxed values
+    
+    private CompactDict( String[] keys, Object[] values, long[] numbers ) {
+        this.keys    = keys;
+        this.values  = values;
+        this.numbers = numbers;
+    }
+    
+    /**
+     * Box an integer, sharing the instances for small values
+     */
+    static Integer box( int value ) {
+        if( value >= 0 && value < INTEGERS.length ) return INTEGERS[ value ];
+        return Integer.valueOf( value );
+    }
+    
+    /**
+     * Get an integer value from a plist dict without boxing it if possible
+     * 
+     * @param missing the value to return if there is no integer for the key
+     */
+    static int intValue( Map<String,?> dict, String key, int missing ) {
+        if( dict instanceof LazyDict ) dict = ((LazyDict) dict).dict();
+        
+        Object value;
+        if( dict instanceof CompactDict ) {
+            CompactDict compact = (CompactDict) dict;
+            int index = compact.indexOf( key );
+            if( index < 0 ) return missing;
+            
+            value = compact.values[ index ];
+            if( value == INTEGER ) return (int) compact.numbers[ index ];
+            if( value == REAL    ) return (int) Double.longBitsToDouble( compact.numbers[ index ] );
+        }
+        else value = dict.get( key );
+        
+        if( value instanceof Number ) return ((Number) value).intValue();
+        return missing;
+    }
+
+    /**
+     * Get a real value from a plist dict without boxing it if possible.
+     * Integer values are widened.
+     * 
+     * @param missing the value to return if there is no number for the key
+     */
+    static double doubleValue( Map<String,?> dict, String key, double missing ) {
+        if( dict instanceof LazyDict ) dict = ((LazyDict) dict).dict();
+        
+        Object value;
+        if( dict instanceof CompactDict ) {
+            CompactDict compact = (CompactDict) dict;
+            int index = compact.indexOf( key );
+            if( index < 0 ) return missing;
+            
+            value = compact.values[ index ];
+            if( value == REAL    ) return Double.longBitsToDouble( compact.numbers[ index ] );
+            if( value == INTEGER ) return compact.numbers[ index ];
+        }
+        else value = dict.get( key );
+        
+        if( value instanceof Number ) return ((Number) value).doubleValue();
+        return missing;
+    }
+    
+    //index of the key, -1 if not found
+    private int indexOf( Object key ) {
+        String[] keys = this.keys;
+        
+        //interned keys will usually match by identity
+        for( int i = 0; i < keys.length; i++ ) {
+            if( keys[i] == key ) return i;
+        }
+        
+        if( key == null ) return -1;
+        for( int i = 0; i < keys.length; i++ ) {
+            if( key.equals( keys[i] ) ) return i;
+        }
+        return -1;
+    }
+    
+    //the value at the given index, boxing numbers
+    private Object valueAt( int index ) {
+        Object value = values[ index ];
+        if( value == INTEGER ) return box( (int) numbers[ index ] );
+        if( value == REAL    ) return Double.valueOf( Double.longBitsToDouble( numbers[ index ] ) );
+        return value;
+    }
+    
+    @Override 
+    public Object get( Object key ) {
+        int index = indexOf( key );
+        return index < 0 ? null : valueAt( index );
+    }
+    
+    @Override 
+    public boolean containsKey( Object key ) {
+        return indexOf( key ) >= 0;
+    }
+    
+    @Override 
+    public int size() {
+        return keys.length;
+    }
+    
+    @Override
+    public Set<Map.Entry<String,Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String,Object>>() {
+            @Override public int size() { return keys.length; }
+            
+            @Override public Iterator<Map.Entry<String,Object>> iterator() {
+                return new Iterator<Map.Entry<String,Object>>() {
+                    private int index;
+                    
+                    public boolean hasNext() { return index < keys.length; }
+                    
+                    public Map.Entry<String,Object> next() {
+                        if( index >= keys.length ) throw new NoSuchElementException();
+                        Map.Entry<String,Object> entry = new SimpleImmutableEntry<String,Object>( keys[ index ], valueAt( index ) );
+                        index++;
+                        return entry;
+                    }
+                    
+                    public void remove() { throw new UnsupportedOperationException(); }
+                };
+            }
+        };
+    }
+    
+    /**
+     * Replace each value with its canonical form. Numbers are left alone.
+     */
+    void canonicalize( PListCanonicalizer canonicalizer ) {
+        for( int i = 0; i < values.length; i++ ) {
+            Object value = values[i];
+            if( value == INTEGER || value == REAL ) continue;
+            
+            Object canonical = canonicalizer.canonical( value );
+            if( canonical != value ) values[i] = canonical;
+        }
+    }
+    
+    /**
+     * A hash over the keys and the values, where the values are already
+     * canonical
+     */
+    int shallowHash() {
+        int hash = keys.length;
+        for( int i = 0; i < keys.length; i++ ) {
+            Object value = values[i];
+            int valueHash = ( value == INTEGER || value == REAL )
+                                ? (int)( numbers[i] ^ ( numbers[i] >>> 32 ) )
+                                : PListCanonicalizer.shallowHash( value );
+            hash = 31 * hash + ( keys[i].hashCode() ^ valueHash );
+        }
+        return hash;
+    }
+    
+    /**
+     * Whether the dict has the same entries, in the same order, as another
+     * dict with canonical values
+     */
+    boolean shallowEquals( CompactDict other ) {
+        if( other.keys.length != keys.length ) return false;
+        
+        for( int i = 0; i < keys.length; i++ ) {
+            if( keys[i] != other.keys[i] && ! keys[i].equals( other.keys[i] ) ) return false;
+            
+            Object value = values[i];
+            if( value == INTEGER || value == REAL ) {
+                if( other.values[i] != value || other.numbers[i] != numbers[i] ) return false;
+            }
+            else if( ! PListCanonicalizer.shallowEquals( value, other.values[i] ) ) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A stack of dict entries that are under construction. Nested dicts 
+     * are built on top of the entries of the enclosing dicts. 
+     */
+    static final class Builder {
+        private String[] keys    = new String[ 64 ];
+        private Object[] values  = new Object[ 64 ];
+        private long[]   numbers = new long[ 64 ];
+        private int top;
+        
+        /**
+         * Start a dict
+         * @return the mark to pass to build
+         */
+        int start() {
+            return top;
+        }
+        
+        /**
+         * Add an entry to the innermost dict. If the key is already present 
+         * the value is replaced.
+         */
+        void put( String key, Object value, int mark ) {
+            set( key, value, 0, mark );
+        }
+        
+        /**
+         * Add an integer entry to the innermost dict. Small values use the
+         * shared boxes, others are held unboxed.
+         */
+        void putInt( String key, int value, int mark ) {
+            if( value >= 0 && value < INTEGERS.length ) set( key, INTEGERS[ value ], 0, mark );
+            else set( key, INTEGER, value, mark );
+        }
+        
+        /**
+         * Add an unboxed real entry to the innermost dict
+         */
+        void putReal( String key, double value, int mark ) {
+            set( key, REAL, Double.doubleToRawLongBits( value ), mark );
+        }
+        
+        private void set( String key, Object value, long number, int mark ) {
+            for( int i = top - 1; i >= mark; i-- ) {
+                if( keys[i] == key || keys[i].equals( key ) ) {
+                    values [i] = value;
+                    numbers[i] = number;
+                    return;
+                }
+            }
+            
+            if( top == keys.length ) {
+                keys    = Arrays.copyOf( keys, top * 2 );
+                values  = Arrays.copyOf( values, top * 2 );
+                numbers = Arrays.copyOf( numbers, top * 2 );
+            }
+            
+            keys   [ top ] = key;
+            values [ top ] = value;
+            numbers[ top ] = number;
+            top++;
+        }
+        
+        /**
+         * Finish the innermost dict
+         * @param mark the mark returned by start
+         */
+        Map<String,Object> build( int mark ) {
+            int size = top - mark;
+            
+            String[] dictKeys    = NO_KEYS;
+            Object[] dictValues  = NO_VALUES;
+            long[]   dictNumbers = null;
+            if( size > 0 ) {
+                dictKeys   = Arrays.copyOfRange( keys, mark, top );
+                dictValues = Arrays.copyOfRange( values, mark, top );
+                
+                for( int i = mark; i < top; i++ ) {
+                    if( values[i] == INTEGER || values[i] == REAL ) {
+                        dictNumbers = Arrays.copyOfRange( numbers, mark, top );
+                        break;
+                    }
+                }
+            }
+            
+            clear( mark );
+            return new CompactDict( dictKeys, dictValues, dictNumbers );
+        }
+        
+        /**
+         * Drop the entries above the mark
+         */
+        void clear( int mark ) {
+            Arrays.fill( keys, mark, top, null );
+            Arrays.fill( values, mark, top, null );
+            top = mark;
+        }
+    }
+}
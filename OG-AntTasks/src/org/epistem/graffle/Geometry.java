@@ -0,0 +1,177 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.List;
+
+/**
+ * Decoder for the coordinate strings in graphics, such as the bounds 
+ * "{{10, 20}, {100, 50}}" and the line points "{10.5, 20}". The numbers 
+ * are parsed straight into a double array without making any objects. 
+ * 
+ * Plain decimals with at most 15 significant digits are converted with 
+ * a single exact multiply or divide, which gives the same result as
+ * Double.parseDouble. Anything else falls back to Double.parseDouble.
+ *
+ * @author nickmain
+ */
+final class Geometry {
+
+    //exact powers of ten
+    private static final double[] POWERS = new double[ 23 ];
+    static {
+        POWERS[0] = 1;
+        for( int i = 1; i < POWERS.length; i++ ) POWERS[i] = POWERS[ i - 1 ] * 10;
+    }
+    
+    private static final long MAX_MANTISSA = 1L << 53;
+    
+    private Geometry() {}
+    
+    /**
+     * Parse the numbers in a coordinate string into an array
+     * 
+     * @param s      the string - numbers are separated by spaces, braces 
+     *               and commas
+     * @param out    the array to write to
+     * @param offset the index to write the first number to
+     * @param count  the number of numbers to read
+     * @return the index after the last number written
+     * @throws IllegalArgumentException if the string has fewer numbers
+     * @throws NumberFormatException    if a number is malformed
+     */
+    static int parse( String s, double[] out, int offset, int count ) {
+        int length = s.length();
+        int pos = 0;
+        
+        for( int n = 0; n < count; n++ ) {
+            while( pos < length && isSeparator( s.charAt( pos ) ) ) pos++;
+            if( pos == length ) throw new IllegalArgumentException( "Expected " + count + " numbers in '" + s + "'" );
+            
+            int start = pos;
+            while( pos < length && ! isSeparator( s.charAt( pos ) ) ) pos++;
+            
+            out[ offset++ ] = parseNumber( s, start, pos );
+        }
+        
+        return offset;
+    }
+    
+    /**
+     * Parse a list of point strings into an array of x,y pairs
+     */
+    static double[] parsePoints( List<?> points ) {
+        double[] coords = new double[ points.size() * 2 ];
+        
+        int offset = 0;
+        for( Object p : points ) {
+            offset = parse( (String) p, coords, offset, 2 );
+        }
+        return coords;
+    }
+    
+    private static boolean isSeparator( char c ) {
+        return c == ' ' || c == '{' || c == '}' || c == ',';
+    }
+    
+    //parse the number in s[start,end)
+    static double parseNumber( String s, int start, int end ) {
+        int pos = start;
+        
+        boolean negative = false;
+        char c = s.charAt( pos );
+        if( c == '-' || c == '+' ) {
+            negative = c == '-';
+            pos++;
+        }
+        
+        long mantissa = 0;
+        int  digits   = 0;
+        int  scale    = 0;
+        boolean point = false;
+        
+        for( ; pos < end; pos++ ) {
+            c = s.charAt( pos );
+            if( c >= '0' && c <= '9' ) {
+                //leading zeros are not significant
+                if( mantissa != 0 || c != '0' ) {
+                    if( ++digits > 15 ) return slow( s, start, end );
+                    mantissa = mantissa * 10 + ( c - '0' );
+                }
+                if( point ) scale++;
+            }
+            else if( c == '.' && ! point ) point = true;
+            else break;
+        }
+        
+        //must have seen at least one digit
+        if( pos == start || ! hasDigit( s, start, pos ) ) return slow( s, start, end );
+        
+        int exponent = 0;
+        if( pos < end ) {
+            c = s.charAt( pos );
+            if( c != 'e' && c != 'E' ) return slow( s, start, end );
+            pos++;
+            
+            boolean negativeExponent = false;
+            if( pos < end && ( s.charAt( pos ) == '-' || s.charAt( pos ) == '+' ) ) {
+                negativeExponent = s.charAt( pos ) == '-';
+                pos++;
+            }
+            if( pos == end || end - pos > 3 ) return slow( s, start, end );
+            
+            for( ; pos < end; pos++ ) {
+                c = s.charAt( pos );
+                if( c < '0' || c > '9' ) return slow( s, start, end );
+                exponent = exponent * 10 + ( c - '0' );
+            }
+            if( negativeExponent ) exponent = -exponent;
+        }
+        
+        exponent -= scale;
+        if( mantissa > MAX_MANTISSA || exponent < -22 || exponent > 22 ) return slow( s, start, end );
+        
+        double value = mantissa;
+        if( exponent < 0 ) value /= POWERS[ -exponent ];
+        else if( exponent > 0 ) value *= POWERS[ exponent ];
+        
+        return negative ? -value : value;
+    }
+    
+    private static boolean hasDigit( String s, int start, int end ) {
+        for( int i = start; i < end; i++ ) {
+            char c = s.charAt( i );
+            if( c >= '0' && c <= '9' ) return true;
+        }
+        return false;
+    }
+    
+    private static double slow( String s, int start, int end ) {
+        return Double.parseDouble( s.substring( start, end ) );
+    }
+}
@@ -0,0 +1,409 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Where the bytes of a document come from. A document is a flat plist 
+ * file (XML, gzipped XML or binary), a package directory holding 
+ * data.plist and image files, a zip of a package, or any of these held 
+ * in memory.
+ * 
+ * Files are memory mapped when the source is opened and the channel is 
+ * closed straight away, so a source holds no file descriptors. Entries 
+ * are returned as buffers over the mapped bytes where possible - only 
+ * compressed zip entries are copied. The returned buffers must not be 
+ * modified.
+ *
+ * @author nickmain
+ */
+public abstract class GraffleSource {
+
+    /** The name of the plist in a package */
+    public static final String DATA_PLIST = "data.plist";
+    
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+    
+    private final String name;
+    private final File file;
+    
+    GraffleSource( String name, File file ) {
+        this.name = name;
+        this.file = file;
+    }
+    
+    /**
+     * Open a document file or package directory
+     */
+    public static GraffleSource open( File file ) throws IOException {
+        if( file.isDirectory() ) return new PackageSource( file );
+        
+        return wrap( map( file ), file.getName(), file );
+    }
+    
+    /**
+     * Wrap a document held in memory - a flat plist or a zipped package
+     * 
+     * @param bytes the document, from the position to the limit
+     */
+    public static GraffleSource wrap( ByteBuffer bytes ) throws IOException {
+        return wrap( bytes.slice(), "<memory>", null );
+    }
+    
+    private static GraffleSource wrap( ByteBuffer bytes, String name, File file ) throws IOException {
+        if( ZipSource.isZip( bytes ) ) return new ZipSource( bytes, name, file );
+        return new FlatSource( bytes, name, file );
+    }
+    
+    /**
+     * The name of the document
+     */
+    public String name() {
+        return name;
+    }
+    
+    /**
+     * The document file or directory
+     * @return null if the document is not a file
+     */
+    public File file() {
+        return file;
+    }
+    
+    /**
+     * The plist bytes, exactly as stored - they may be binary or gzipped.
+     * The buffer runs from zero to its limit.
+     */
+    public abstract ByteBuffer plist() throws IOException;
+    
+    /**
+     * The names of the entries other than the plist, such as images
+     * @return empty for a flat file
+     */
+    public abstract List<String> entryNames();
+    
+    /**
+     * Get an entry. The buffer runs from zero to its limit.
+     * @return null if there is no such entry
+     */
+    public abstract ByteBuffer entry( String name ) throws IOException;
+    
+    /**
+     * Get the bytes of the image with the given id, "image<id>.tiff" or 
+     * "image<id>" with any other extension
+     * 
+     * @return null if there is no such entry
+     */
+    public ByteBuffer image( int id ) throws IOException {
+        ByteBuffer tiff = entry( "image" + id + ".tiff" );
+        if( tiff != null ) return tiff;
+        
+        String prefix = "image" + id + ".";
+        for( String entryName : entryNames() ) {
+            if( entryName.startsWith( prefix ) ) return entry( entryName );
+        }
+        return null;
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + name + "]";
+    }
+    
+    //map a whole file and close it
+    private static ByteBuffer map( File file ) throws IOException {
+        FileInputStream in = new FileInputStream( file );
+        try {
+            FileChannel channel = in.getChannel();
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * A single plist file
+     */
+    private static final class FlatSource extends GraffleSource {
+        private final ByteBuffer bytes;
+        
+        FlatSource( ByteBuffer bytes, String name, File file ) {
+            super( name, file );
+            this.bytes = bytes;
+        }
+        
+        @Override
+        public ByteBuffer plist() {
+            return bytes.duplicate();
+        }
+        
+        @Override
+        public List<String> entryNames() {
+            return Collections.emptyList();
+        }
+        
+        @Override
+        public ByteBuffer entry( String name ) {
+            return null;
+        }
+    }
+    
+    /**
+     * A package directory. Each entry is mapped once, on first use.
+     */
+    private static final class PackageSource extends GraffleSource {
+        private final File dir;
+        private final List<String> entryNames;
+        private final Map<String,ByteBuffer> mapped = new HashMap<String,ByteBuffer>();
+        
+        PackageSource( File dir ) throws IOException {
+            super( dir.getName(), dir );
+            this.dir = dir;
+            
+            String[] names = dir.list();
+            if( names == null ) throw new IOException( "cannot list " + dir );
+            
+            List<String> entries = new ArrayList<String>();
+            for( String entryName : names ) {
+                if( ! entryName.equals( DATA_PLIST ) && new File( dir, entryName ).isFile() ) entries.add( entryName );
+            }
+            Collections.sort( entries );
+            entryNames = Collections.unmodifiableList( entries );
+        }
+        
+        @Override
+        public ByteBuffer plist() throws IOException {
+            return mapped( DATA_PLIST );
+        }
+        
+        @Override
+        public List<String> entryNames() {
+            return entryNames;
+        }
+        
+        @Override
+        public ByteBuffer entry( String name ) throws IOException {
+            if( ! entryNames.contains( name ) ) return null;
+            return mapped( name );
+        }
+        
+        private synchronized ByteBuffer mapped( String name ) throws IOException {
+            ByteBuffer bytes = mapped.get( name );
+            if( bytes == null ) {
+                bytes = map( new File( dir, name ) );
+                mapped.put( name, bytes );
+            }
+            return bytes.duplicate();
+        }
+    }
+    
+    /**
+     * A zipped package. The central directory is read when the source is 
+     * made - the package is the folder holding the shallowest data.plist.
+     */
+    private static final class ZipSource extends GraffleSource {
+        private static final int LOCAL_SIG   = 0x04034b50;
+        private static final int CENTRAL_SIG = 0x02014b50;
+        private static final int END_SIG     = 0x06054b50;
+        private static final int END_SIZE    = 22;
+        
+        private static final int STORED   = 0;
+        private static final int DEFLATED = 8;
+        
+        //an entry in the central directory
+        private static final class Entry {
+            final int method;
+            final int compressedSize;
+            final int size;
+            final int headerOffset;
+            
+            Entry( int method, int compressedSize, int size, int headerOffset ) {
+                this.method         = method;
+                this.compressedSize = compressedSize;
+                this.size           = size;
+                this.headerOffset   = headerOffset;
+            }
+        }
+        
+        private final ByteBuffer bytes;
+        private final Entry plist;
+        private final Map<String,Entry> entries = new LinkedHashMap<String,Entry>();
+        private final List<String> entryNames;
+        
+        static boolean isZip( ByteBuffer bytes ) {
+            return bytes.limit() >= 4 
+                && bytes.duplicate().order( ByteOrder.LITTLE_ENDIAN ).getInt( 0 ) == LOCAL_SIG;
+        }
+        
+        ZipSource( ByteBuffer bytes, String name, File file ) throws IOException {
+            super( name, file );
+            this.bytes = bytes.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+            
+            Map<String,Entry> all = readDirectory();
+            
+            //the package root is the folder of the shallowest data.plist
+            String root = null;
+            for( String entryName : all.keySet() ) {
+                if( ! entryName.equals( DATA_PLIST ) && ! entryName.endsWith( "/" + DATA_PLIST ) ) continue;
+                
+                String folder = entryName.substring( 0, entryName.length() - DATA_PLIST.length() );
+                if( root == null || folder.length() < root.length() ) root = folder;
+            }
+            if( root == null ) throw new IOException( "no " + DATA_PLIST + " in " + name );
+            
+            plist = all.get( root + DATA_PLIST );
+            for( Map.Entry<String,Entry> e : all.entrySet() ) {
+                String entryName = e.getKey();
+                if( ! entryName.startsWith( root ) || entryName.endsWith( "/" ) ) continue;
+                
+                String relative = entryName.substring( root.length() );
+                if( relative.equals( DATA_PLIST ) || relative.indexOf( '/' ) >= 0 ) continue;
+                entries.put( relative, e.getValue() );
+            }
+            entryNames = Collections.unmodifiableList( new ArrayList<String>( entries.keySet() ) );
+        }
+        
+        @Override
+        public ByteBuffer plist() throws IOException {
+            return read( plist );
+        }
+        
+        @Override
+        public List<String> entryNames() {
+            return entryNames;
+        }
+        
+        @Override
+        public ByteBuffer entry( String name ) throws IOException {
+            Entry entry = entries.get( name );
+            if( entry == null ) return null;
+            return read( entry );
+        }
+        
+        private Map<String,Entry> readDirectory() throws IOException {
+            int end = -1;
+            int lowest = Math.max( 0, bytes.limit() - END_SIZE - 0xffff );
+            for( int i = bytes.limit() - END_SIZE; i >= lowest; i-- ) {
+                if( bytes.getInt( i ) == END_SIG ) {
+                    end = i;
+                    break;
+                }
+            }
+            if( end < 0 ) throw new IOException( "no zip directory in " + name() );
+            
+            int count  = bytes.getShort( end + 10 ) & 0xffff;
+            int offset = bytes.getInt( end + 16 );
+            
+            Map<String,Entry> all = new LinkedHashMap<String,Entry>();
+            try {
+                for( int i = 0; i < count; i++ ) {
+                    if( bytes.getInt( offset ) != CENTRAL_SIG ) throw new IOException( "bad zip directory in " + name() );
+                    
+                    int method         = bytes.getShort( offset + 10 ) & 0xffff;
+                    int compressedSize = bytes.getInt( offset + 20 );
+                    int size           = bytes.getInt( offset + 24 );
+                    int nameLength     = bytes.getShort( offset + 28 ) & 0xffff;
+                    int extraLength    = bytes.getShort( offset + 30 ) & 0xffff;
+                    int commentLength  = bytes.getShort( offset + 32 ) & 0xffff;
+                    int headerOffset   = bytes.getInt( offset + 42 );
+                    
+                    if( compressedSize < 0 || size < 0 || headerOffset < 0 ) {
+                        throw new IOException( "zip64 entries are not supported in " + name() );
+                    }
+                    
+                    byte[] nameBytes = new byte[ nameLength ];
+                    ByteBuffer nameBuffer = bytes.duplicate();
+                    nameBuffer.position( offset + 46 );
+                    nameBuffer.get( nameBytes );
+                    
+                    all.put( new String( nameBytes, UTF8 ), new Entry( method, compressedSize, size, headerOffset ) );
+                    offset += 46 + nameLength + extraLength + commentLength;
+                }
+            }
+            catch( IndexOutOfBoundsException ex ) {
+                throw new IOException( "zip directory is truncated in " + name() );
+            }
+            
+            return all;
+        }
+        
+        //the uncompressed bytes of an entry
+        private ByteBuffer read( Entry entry ) throws IOException {
+            int offset = entry.headerOffset;
+            if( bytes.getInt( offset ) != LOCAL_SIG ) throw new IOException( "bad zip entry in " + name() );
+            
+            int start = offset + 30 
+                      + ( bytes.getShort( offset + 26 ) & 0xffff ) 
+                      + ( bytes.getShort( offset + 28 ) & 0xffff );
+            
+            ByteBuffer data = bytes.duplicate();
+            data.position( start );
+            data.limit( start + entry.compressedSize );
+            data = data.slice();
+            
+            if( entry.method == STORED ) return data;
+            if( entry.method != DEFLATED ) throw new IOException( "unsupported zip method " + entry.method + " in " + name() );
+            
+            //the inflater needs an extra byte after raw deflate data
+            byte[] compressed = new byte[ entry.compressedSize + 1 ];
+            data.get( compressed, 0, entry.compressedSize );
+            
+            byte[] inflated = new byte[ entry.size ];
+            Inflater inflater = new Inflater( true );
+            try {
+                inflater.setInput( compressed );
+                int count = 0;
+                while( count < inflated.length ) {
+                    int n = inflater.inflate( inflated, count, inflated.length - count );
+                    if( n == 0 && ( inflater.finished() || inflater.needsInput() ) ) break;
+                    count += n;
+                }
+                if( count != inflated.length ) throw new IOException( "zip entry is truncated in " + name() );
+            }
+            catch( DataFormatException ex ) {
+                throw new IOException( "bad zip entry in " + name() + ": " + ex.getMessage() );
+            }
+            finally {
+                inflater.end();
+            }
+            
+            return ByteBuffer.wrap( inflated );
+        }
+    }
+}
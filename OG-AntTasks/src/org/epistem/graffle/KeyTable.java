@@ -0,0 +1,136 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+/**
+ * A bounded intern table for plist dict keys, shared across parses. Keys 
+ * can be looked up straight from a character buffer so that a String is 
+ * only created the first time a key is seen.
+ * 
+ * Lookups do not lock. Once the table is full new keys are no longer 
+ * interned.
+ *
+ * @author nickmain
+ */
+final class KeyTable {
+
+    /** The table shared by all the parsers */
+    static final KeyTable SHARED = new KeyTable( 4096 );
+    
+    //longer keys are not interned
+    private static final int MAX_LENGTH = 64;
+    
+    private final String[] table;
+    private final int mask;
+    private final int capacity;
+    private int count;
+    
+    /**
+     * @param size the table size - a power of two
+     */
+    KeyTable( int size ) {
+        table    = new String[ size ];
+        mask     = size - 1;
+        capacity = size * 3 / 4;
+    }
+    
+    /**
+     * Intern a key
+     */
+    String intern( String key ) {
+        return intern( key, 0, key.length(), key );
+    }
+    
+    /**
+     * Intern the trimmed characters of a key
+     */
+    String internTrimmed( CharSequence chars ) {
+        int start = 0;
+        int end   = chars.length();
+        while( start < end && chars.charAt( start ) <= ' ' ) start++;
+        while( end > start && chars.charAt( end - 1 ) <= ' ' ) end--;
+        
+        return intern( chars, start, end, null );
+    }
+    
+    //look up the characters - if not found then add the given string or a 
+    //new string made from the characters
+    private String intern( CharSequence chars, int start, int end, String key ) {
+        int length = end - start;
+        if( length > MAX_LENGTH ) {
+            return key != null ? key : chars.subSequence( start, end ).toString();
+        }
+        
+        //same as String.hashCode()
+        int hash = 0;
+        for( int i = start; i < end; i++ ) hash = 31 * hash + chars.charAt( i );
+
+        String[] table = this.table;
+        int index = spread( hash ) & mask;
+        while( true ) {
+            String s = table[ index ];
+            if( s == null ) break;
+            if( s.hashCode() == hash && matches( s, chars, start, end ) ) return s;
+            index = ( index + 1 ) & mask;
+        }
+        
+        if( key == null ) key = chars.subSequence( start, end ).toString();
+        return insert( key, hash );
+    }
+    
+    //insert a key that was not found - or return the one that another 
+    //thread inserted in the meantime
+    private synchronized String insert( String key, int hash ) {
+        int index = spread( hash ) & mask;
+        while( true ) {
+            String s = table[ index ];
+            if( s == null ) break;
+            if( s.hashCode() == hash && s.equals( key ) ) return s;
+            index = ( index + 1 ) & mask;
+        }
+        
+        if( count >= capacity ) return key;
+        
+        table[ index ] = key;
+        count++;
+        return key;
+    }
+    
+    private static boolean matches( String s, CharSequence chars, int start, int end ) {
+        if( s.length() != end - start ) return false;
+        
+        for( int i = 0; i < s.length(); i++ ) {
+            if( s.charAt( i ) != chars.charAt( start + i ) ) return false;
+        }
+        return true;
+    }
+    
+    private static int spread( int hash ) {
+        return hash ^ ( hash >>> 16 );
+    }
+}
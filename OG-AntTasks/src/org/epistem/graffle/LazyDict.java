@@ -0,0 +1,93 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.epistem.graffle.PListByteParser.Laziness;
+
+/**
+ * A dict that is decoded from the plist buffer on first access.
+ *
+ * @author nickmain
+ */
+final class LazyDict extends AbstractMap<String,Object> {
+
+    private ByteBuffer buffer;
+    private final int offset;
+    private final Laziness laziness;
+    private final boolean deferData;
+    private volatile Map<String,Object> dict;
+    
+    /**
+     * @param buffer the plist buffer
+     * @param offset the offset of the dict start tag
+     * @param laziness how lazy the decoded dict should be
+     * @param deferData whether to leave data values encoded
+     */
+    LazyDict( ByteBuffer buffer, int offset, Laziness laziness, boolean deferData ) {
+        this.buffer    = buffer;
+        this.offset    = offset;
+        this.laziness  = laziness;
+        this.deferData = deferData;
+    }
+    
+    /**
+     * Whether the dict has been decoded
+     */
+    boolean isDecoded() {
+        return dict != null;
+    }
+    
+    /**
+     * Decode the dict, dropping the reference to the buffer. Only one thread 
+     * decodes the dict.
+     */
+    Map<String,Object> dict() {
+        Map<String,Object> decoded = dict;
+        if( decoded != null ) return decoded;
+        
+        synchronized( this ) {
+            if( dict == null ) {
+                dict = PListByteParser.parseDict( buffer, offset, laziness, deferData );
+                buffer = null;
+            }
+            return dict;
+        }
+    }
+    
+    @Override public Set<Map.Entry<String,Object>> entrySet() { return dict().entrySet(); }
+    @Override public Set<String> keySet()                    { return dict().keySet(); }
+    @Override public Collection<Object> values()             { return dict().values(); }
+    @Override public int size()                              { return dict().size(); }
+    @Override public boolean containsKey( Object key )       { return dict().containsKey( key ); }
+    @Override public Object get( Object key )                { return dict().get( key ); }
+    @Override public Object put( String key, Object value )  { return dict().put( key, value ); }
+    @Override public Object remove( Object key )             { return dict().remove( key ); }
+}
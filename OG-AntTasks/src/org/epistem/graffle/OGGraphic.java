@@ -29,12 +29,12 @@ package org.epistem.graffle;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.io.StringReader;
 import java.util.*;
 
 import javax.swing.text.DefaultStyledDocument;
-import javax.swing.text.rtf.RTFEditorKit;
 
+import static org.epistem.graffle.CompactDict.doubleValue;
+import static org.epistem.graffle.CompactDict.intValue;
 import static org.epistem.graffle.OGUtils.*;
 
 /**
@@ -57,6 +57,16 @@ public final class OGGraphic {
     public  final OGGraphic parent;
     private OGLayer layer;    
     
+    //memoized values - each is immutable and may be computed more than once
+    //if several threads race, which is harmless
+    private volatile Scalars         scalars;
+    private volatile GraphicClass    graphicClass;
+    private volatile Stroke          stroke;
+    private volatile double[]        bounds; //x, y, width, height
+    private volatile double[]        points; //x, y pairs
+    private volatile List<OGGraphic> graphics;
+    private volatile OGGraphic[][]   grid;     //table cells by row and column
+    
     OGGraphic( OGSheet sheet, OGGraphic parent, Map<String, Object> dict ) {
         this.dict = dict;
         this.sheet = sheet;
@@ -67,14 +77,27 @@ public final class OGGraphic {
      * Whether a group is a subgraph
      */
     public boolean isSubgraph() {
-        Boolean b = (Boolean) dict.get( "isSubgraph" );
-        if( b == null ) return false;
-        return b;
+        return scalars().subgraph;
     }
     
     /** Get the graphic type */
     public GraphicClass graphicClass() {
-        return GraphicClass.valueOf( (String ) dict.get( "Class" ) );
+        GraphicClass graphicClass = this.graphicClass;
+        if( graphicClass == null ) {
+            graphicClass = GraphicClass.valueOf( (String ) dict.get( "Class" ) );
+            this.graphicClass = graphicClass;
+        }
+        return graphicClass;
+    }
+    
+    //the scalar properties, read on first use
+    private Scalars scalars() {
+        Scalars scalars = this.scalars;
+        if( scalars == null ) {
+            scalars = new Scalars( dict );
+            this.scalars = scalars;
+        }
+        return scalars;
     }
     
     /**
@@ -82,8 +105,8 @@ public final class OGGraphic {
      */
     public OGLayer layer() {
         if( layer == null ) {
-            Integer layerIndex = (Integer) dict.get( "Layer" );
-            if( layerIndex == null ) return null;
+            int layerIndex = intValue( dict, "Layer", -1 );
+            if( layerIndex < 0 ) return null;
             layer = sheet.layers[ layerIndex ];
         }
         return layer;
@@ -93,21 +116,14 @@ public final class OGGraphic {
      * Get the stroke style (zero is solid)
      */
     public int strokePattern() {
-        Map<String,Object> style = (Map<String,Object>) dict.get( "Style" );
-        if( style == null ) return 0;
-        Map<String,Object> stroke = (Map<String,Object>) style.get( "stroke" );
-        if( stroke == null ) return 0;
-
-        Integer pattern = (Integer) stroke.get( "Pattern" );
-        if( pattern == null ) return 0;
-        return pattern;
+        return stroke().pattern;
     }
     
     /**
      * Get the graphic's id
      */
     public int id() {
-        return (Integer) dict.get( "ID" );
+        return scalars().id;
     }
     
     /**
@@ -126,29 +142,13 @@ public final class OGGraphic {
      */
     public List<List<OGGraphic>> tableRows() {
         List<List<OGGraphic>> rows = new ArrayList<List<OGGraphic>>();
-        if( graphicClass() != GraphicClass.TableGroup ) return rows;
-        
-        SortedMap<Double, SortedMap<Double, OGGraphic>> rowMap = 
-            new TreeMap<Double, SortedMap<Double,OGGraphic>>();
-        
-        for( OGGraphic g : graphics() ) {
-            Rectangle2D rect = g.bounds();
-            
-            SortedMap<Double,OGGraphic> row = rowMap.get( rect.getY() );
-            if( row == null ) {
-                row = new TreeMap<Double, OGGraphic>();
-                rowMap.put( rect.getY(), row );
-            }
-            
-            row.put( rect.getX(), g );
-        }
         
-        for( SortedMap<Double,OGGraphic> row : rowMap.values() ) {
-            List<OGGraphic> rowList = new ArrayList<OGGraphic>();
+        for( OGGraphic[] row : grid() ) {
+            List<OGGraphic> rowList = new ArrayList<OGGraphic>( row.length );
             rows.add( rowList );
             
-            for( OGGraphic g : row.values() ) {
-                rowList.add( g );
+            for( OGGraphic g : row ) {
+                if( g != null ) rowList.add( g );
             }
         }
         
@@ -159,24 +159,48 @@ public final class OGGraphic {
      * Get the cells of a table in an [x][y] array
      */
     public OGGraphic[][] table() {
-        List<List<OGGraphic>> tableRows = tableRows();
-        if( tableRows.isEmpty() ) return new OGGraphic[0][];
+        OGGraphic[][] grid = grid();
+        if( grid.length == 0 ) return new OGGraphic[0][];
         
-        int rowCount = tableRows.size();
-        int rowSize  = tableRows.get(0).size();
+        int rowCount = grid.length;
+        int rowSize  = grid[0].length;
         OGGraphic[][] table = new OGGraphic[ rowSize ][ rowCount ];
         for( int y = 0; y < rowCount; y++ ) {
-            List<OGGraphic> row = tableRows.get( y );
-            
             for( int x = 0; x < rowSize; x++ ) {
-                OGGraphic cell = row.get( x );
-                table[x][y] = cell;
+                table[x][y] = grid[y][x];
             }
         }       
         
         return table;
     }
     
+    /**
+     * Get the cells of a table in a new [row][column] array. Cells whose 
+     * positions differ by less than half a point are in the same row or
+     * column.
+     * 
+     * @return empty if this is not a table, null where there is no cell
+     */
+    public OGGraphic[][] tableGrid() {
+        OGGraphic[][] grid = grid();
+        
+        OGGraphic[][] copy = new OGGraphic[ grid.length ][];
+        for( int i = 0; i < grid.length; i++ ) copy[i] = grid[i].clone();
+        return copy;
+    }
+    
+    //the table layout, built on first use
+    private OGGraphic[][] grid() {
+        OGGraphic[][] grid = this.grid;
+        if( grid == null ) {
+            grid = ( graphicClass() == GraphicClass.TableGroup ) 
+                       ? TableGrid.build( graphics(), TableGrid.TOLERANCE )
+                       : new OGGraphic[0][];
+            this.grid = grid;
+        }
+        return grid;
+    }
+    
     /**
      * Get the user defined properties
      */
@@ -203,27 +227,51 @@ public final class OGGraphic {
      * Get the bounds of a shape graphic
      */
     public Rectangle2D bounds() {
-        String bounds = (String) dict.get( "Bounds" );
-        if( bounds == null ) bounds = "{{0,0}, {0,0}}";
-        
-        StringTokenizer tok = new StringTokenizer( bounds, " {}," );
-        
-        return new Rectangle2D.Double( 
-                       Double.parseDouble( tok.nextToken() ),
-                       Double.parseDouble( tok.nextToken() ),                
-                       Double.parseDouble( tok.nextToken() ),                
-                       Double.parseDouble( tok.nextToken() ));
+        double[] bounds = boundsArray();
+        return new Rectangle2D.Double( bounds[0], bounds[1], bounds[2], bounds[3] );
     }
     
     /**
-     * Get the graphics within a group graphic
+     * Get the bounds of a shape graphic as a new array of x, y, width and
+     * height
+     */
+    public double[] boundsArray() {
+        return packedBounds().clone();
+    }
+    
+    //the bounds, parsed on first use
+    double[] packedBounds() {
+        double[] packed = this.bounds;
+        if( packed == null ) {
+            packed = new double[ 4 ];
+            
+            String bounds = (String) dict.get( "Bounds" );
+            if( bounds != null ) Geometry.parse( bounds, packed, 0, 4 );
+            this.bounds = packed;
+        }
+        return packed;
+    }
+    
+    /**
+     * Get the graphics within a group graphic. The list is made on first
+     * use and the same unmodifiable list is returned by later calls.
      */
     public List<OGGraphic> graphics() {
-        List<OGGraphic> oggraphics = new ArrayList<OGGraphic>();
-        
-        List<Object> graphics = (List<Object>) dict.get( "Graphics" );
-        for( Object dict : graphics ) {
-            oggraphics.add( new OGGraphic( sheet, this, (Map<String,Object>) dict ) );
+        List<OGGraphic> oggraphics = this.graphics;
+        if( oggraphics == null ) {
+            synchronized( this ) {
+                oggraphics = this.graphics;
+                if( oggraphics == null ) {
+                    List<Object> graphics = (List<Object>) dict.get( "Graphics" );
+                    oggraphics = new ArrayList<OGGraphic>( graphics.size() );
+                    for( Object dict : graphics ) {
+                        oggraphics.add( new OGGraphic( sheet, this, (Map<String,Object>) dict ) );
+                    }
+                    
+                    oggraphics = Collections.unmodifiableList( oggraphics );
+                    this.graphics = oggraphics;
+                }
+            }
         }
         
         return oggraphics;
@@ -233,41 +281,55 @@ public final class OGGraphic {
      * Get the points for a line graphic
      */
     public List<Point2D> points() {
-        List<Point2D> points = new ArrayList<Point2D>();
+        double[] packed = packedPoints();
         
-        List<Object> pp = (List<Object>) dict.get( "Points" );
-        for( Object p : pp ) {
-            StringTokenizer tok = new StringTokenizer( (String) p, " {}," );
-            points.add( new Point2D.Double( 
-                                Double.parseDouble( tok.nextToken() ),
-                                Double.parseDouble( tok.nextToken() ) ));
+        List<Point2D> points = new ArrayList<Point2D>( packed.length / 2 );
+        for( int i = 0; i < packed.length; i += 2 ) {
+            points.add( new Point2D.Double( packed[i], packed[ i + 1 ] ) );
         }
-        
         return points;
     }
     
+    /**
+     * Get the points for a line graphic as a new array of x, y pairs
+     */
+    public double[] pointArray() {
+        return packedPoints().clone();
+    }
+    
+    //the points, parsed on first use
+    private double[] packedPoints() {
+        double[] packed = this.points;
+        if( packed == null ) {
+            packed = Geometry.parsePoints( (List<Object>) dict.get( "Points" ) );
+            this.points = packed;
+        }
+        return packed;
+    }
+    
     /**
      * Get the head arrow type for a line graphic
      */
     public String headArrow() {
-        Map<String,Object> style = (Map<String,Object>) dict.get( "Style" );
-        if( style == null ) return "0";
-        Map<String,Object> stroke = (Map<String,Object>) style.get( "stroke" );
-        if( stroke == null ) return "0";
-        
-        return (String) stroke.get( "HeadArrow" );
+        return stroke().headArrow;
     }
 
     /**
      * Get the tail arrow type for a line graphic
      */
     public String tailArrow() {
-        Map<String,Object> style = (Map<String,Object>) dict.get( "Style" );
-        if( style == null ) return "0";
-        Map<String,Object> stroke = (Map<String,Object>) style.get( "stroke" );
-        if( stroke == null ) return "0";
-        
-        return (String) stroke.get( "TailArrow" );
+        return stroke().tailArrow;
+    }
+    
+    //the stroke properties, shared between graphics with the same style
+    private Stroke stroke() {
+        Stroke stroke = this.stroke;
+        if( stroke == null ) {
+            Map<String,Object> style = (Map<String,Object>) dict.get( "Style" );
+            stroke = ( style == null ) ? Stroke.NONE : sheet.document.stroke( style );
+            this.stroke = stroke;
+        }
+        return stroke;
     }
     
     /**
@@ -275,10 +337,7 @@ public final class OGGraphic {
      * @return zero if none
      */
     public int headId() {
-        Map<String,Object> head = (Map<String,Object>) dict.get( "Head" );
-        if( head == null ) return 0;
-        
-        return (Integer) head.get( "ID" );        
+        return scalars().headId;
     }
     
     /**
@@ -286,10 +345,7 @@ public final class OGGraphic {
      * @return zero if none
      */
     public int tailId() {
-        Map<String,Object> tail = (Map<String,Object>) dict.get( "Tail" );
-        if( tail == null ) return 0;
-        
-        return (Integer) tail.get( "ID" );        
+        return scalars().tailId;
     }
     
     /**
@@ -297,10 +353,7 @@ public final class OGGraphic {
      * @return zero if none
      */
     public int labelLineId() {
-        Map<String,Object> line = (Map<String,Object>) dict.get( "Line" );
-        if( line == null ) return 0;
-        
-        return (Integer) line.get( "ID" );                
+        return scalars().labelLineId;
     }
     
     /**
@@ -308,21 +361,25 @@ public final class OGGraphic {
      * @return zero if none
      */
     public double labelPosition() {
-        Map<String,Object> line = (Map<String,Object>) dict.get( "Line" );
-        if( line == null ) return 0;
-        
-        return (Double) line.get( "Position" );
+        return scalars().labelPosition;
     }
     
     /**
-     * Get the text of the shape
+     * Get the raw RTF of the shape text
+     * @return null if there is no text
      */
-    public String text() {
+    public String rtf() {
         Map<String,Object> text = (Map<String,Object>) dict.get( "Text" );
         if( text == null ) return null;
         
-        String s = (String) text.get( "Text" );
-        s = unRTF( s );
+        return (String) text.get( "Text" );
+    }
+    
+    /**
+     * Get the text of the shape
+     */
+    public String text() {
+        String s = unRTF( rtf() );
         if( s == null ) return null;
         if( s.endsWith( "\n" ) ) s = s.substring( 0, s.length() - 1 );
         return s;
@@ -330,24 +387,85 @@ public final class OGGraphic {
     
     /**
      * Get the styled text
+     * @return null if there is no text
      */
-    public DefaultStyledDocument styledText() {
-        Map<String,Object> text = (Map<String,Object>) dict.get( "Text" );
-        if( text == null ) return null;
-
-        String s = (String) text.get( "Text" );
+    public StyledText richText() {
+        String s = rtf();
         if( s == null ) return null;
 
-        DefaultStyledDocument doc = new DefaultStyledDocument();
-        RTFEditorKit kit = new RTFEditorKit();
+        return RTFCache.shared().styledText( s );
+    }
+    
+    /**
+     * Get the styled text as a Swing document
+     * @return null if there is no text
+     */
+    public DefaultStyledDocument styledText() {
+        StyledText text = richText();
+        if( text == null ) return null;
         
-        try {
-            kit.read( new StringReader( s ), doc, 0 );
+        return text.toStyledDocument();
+    }
+    
+    /**
+     * The ids and flags of a graphic, read together on first use
+     */
+    private static final class Scalars {
+        final int id;
+        final boolean subgraph;
+        final int headId;
+        final int tailId;
+        final int labelLineId;
+        final double labelPosition;
+        
+        Scalars( Map<String,Object> dict ) {
+            id = intValue( dict, "ID", 0 );
+            
+            Boolean b = (Boolean) dict.get( "isSubgraph" );
+            subgraph = b != null && b;
+            
+            headId = connectedId( dict, "Head" );
+            tailId = connectedId( dict, "Tail" );
+            
+            Map<String,Object> line = (Map<String,Object>) dict.get( "Line" );
+            labelLineId   = line == null ? 0 : intValue( line, "ID", 0 );
+            labelPosition = line == null ? 0 : doubleValue( line, "Position", 0 );
         }
-        catch( Exception ex ) {
-            throw new RuntimeException( ex );
+        
+        private static int connectedId( Map<String,Object> dict, String key ) {
+            Map<String,Object> end = (Map<String,Object>) dict.get( key );
+            if( end == null ) return 0;
+            
+            return intValue( end, "ID", 0 );
+        }
+    }
+    
+    /**
+     * The stroke properties of a style dict
+     */
+    static final class Stroke {
+        static final Stroke NONE = new Stroke( 0, "0", "0" );
+        
+        final int pattern;
+        final String headArrow;
+        final String tailArrow;
+        
+        private Stroke( int pattern, String headArrow, String tailArrow ) {
+            this.pattern   = pattern;
+            this.headArrow = headArrow;
+            this.tailArrow = tailArrow;
         }
         
-        return doc;
+        /**
+         * Read the stroke properties of a style dict
+         */
+        static Stroke of( Map<String,Object> style ) {
+            Map<String,Object> stroke = (Map<String,Object>) style.get( "stroke" );
+            if( stroke == null ) return NONE;
+            
+            return new Stroke( intValue( stroke, "Pattern", 0 ),
+                               (String) stroke.get( "HeadArrow" ),
+                               (String) stroke.get( "TailArrow" ) );
+        }
     }
 }
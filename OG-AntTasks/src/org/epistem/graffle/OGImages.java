@@ -0,0 +1,305 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.epistem.io.ByteBufferInputStream;
+
+/**
+ * The images of a document. Images are found by id - in a package they 
+ * are the "image<id>.*" entries of the {@link GraffleSource}, in a flat 
+ * file they are the data values in the root Images array, in the same 
+ * order as the ImageList names.
+ * 
+ * Decoded images are held by soft references in a cache shared by all 
+ * documents, keyed by a hash of the image bytes and the subsampling, so 
+ * identical images attached to different ids, or to different documents
+ * in a batch, are decoded once. The cached images are shared and must 
+ * not be modified. Safe to use from several threads.
+ *
+ * @author nickmain
+ */
+@SuppressWarnings("unchecked")
+public final class OGImages {
+
+    private static ExecutorService prefetcher;
+    
+    //decoded images by content hash and subsampling, for all documents
+    private static final ConcurrentMap<String,CachedImage> cache = new ConcurrentHashMap<String,CachedImage>();
+    private static final ReferenceQueue<BufferedImage> cleared = new ReferenceQueue<BufferedImage>();
+    
+    private final OmniGraffleDoc document;
+    
+    //content hash by image id
+    private final ConcurrentMap<Integer,String> hashes = new ConcurrentHashMap<Integer,String>();
+    
+    OGImages( OmniGraffleDoc document ) {
+        this.document = document;
+    }
+    
+    /**
+     * Get the size of an image by reading its header, without decoding it
+     * @return null if there is no such image or its format is not known
+     */
+    public Dimension size( int id ) throws IOException {
+        ImageInputStream in = open( id );
+        if( in == null ) return null;
+        
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders( in );
+            if( ! readers.hasNext() ) return null;
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput( in, true, true );
+                return new Dimension( reader.getWidth( 0 ), reader.getHeight( 0 ) );
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Get a full size image
+     * @return null if there is no such image or its format is not known
+     */
+    public BufferedImage read( int id ) throws IOException {
+        return read( id, 1 );
+    }
+    
+    /**
+     * Get an image, keeping only every n-th pixel in each direction
+     * 
+     * @param subsampling 1 for the full image, 2 for half size, and so on
+     * @return null if there is no such image or its format is not known
+     */
+    public BufferedImage read( int id, int subsampling ) throws IOException {
+        if( subsampling < 1 ) throw new IllegalArgumentException( "subsampling must be positive" );
+        expunge();
+        
+        ByteBuffer bytes = null;
+        String hash = hashes.get( id );
+        if( hash == null ) {
+            bytes = bytes( id );
+            if( bytes == null ) return null;
+            
+            hash = hash( bytes );
+            hashes.put( id, hash );
+        }
+        
+        String key = hash + "/" + subsampling;
+        CachedImage cached = cache.get( key );
+        BufferedImage image = ( cached != null ) ? cached.get() : null;
+        if( image != null ) return image;
+        
+        //decode outside any lock - two threads may decode the same image
+        if( bytes == null ) bytes = bytes( id );
+        if( bytes == null ) return null;
+        
+        image = decode( bytes, subsampling );
+        if( image != null ) cache.put( key, new CachedImage( key, image, cleared ) );
+        return image;
+    }
+    
+    /**
+     * Decode all the images on a sheet, including those in groups, on a
+     * shared pool with a thread per processor
+     * 
+     * @param subsampling the subsampling to decode with
+     * @return the futures for the distinct images, in no particular order
+     */
+    public List<Future<BufferedImage>> prefetch( OGSheet sheet, final int subsampling ) {
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        collectImageIds( sheet.graphics(), ids );
+        
+        ExecutorService executor = prefetcher();
+        List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>( ids.size() );
+        for( final Integer id : ids ) {
+            futures.add( executor.submit( new Callable<BufferedImage>() {
+                public BufferedImage call() throws Exception {
+                    return read( id, subsampling );
+                }
+            }));
+        }
+        
+        return futures;
+    }
+    
+    /**
+     * The number of decoded images that are still cached, for all documents
+     */
+    public static int cachedCount() {
+        expunge();
+        return cache.size();
+    }
+    
+    /**
+     * Drop all the decoded images, for all documents
+     */
+    public static void clearCache() {
+        cache.clear();
+        expunge();
+    }
+    
+    private static void collectImageIds( List<OGGraphic> graphics, Set<Integer> ids ) {
+        for( OGGraphic g : graphics ) {
+            Integer id = g.imageId();
+            if( id != null ) ids.add( id );
+            
+            OGGraphic.GraphicClass type = g.graphicClass();
+            if( type == OGGraphic.GraphicClass.Group || type == OGGraphic.GraphicClass.TableGroup ) {
+                collectImageIds( g.graphics(), ids );
+            }
+        }
+    }
+    
+    //get the shared executor for prefetching images
+    private static synchronized ExecutorService prefetcher() {
+        if( prefetcher == null ) prefetcher = PListParser.newDaemonPool( "graffle-images" );
+        return prefetcher;
+    }
+    
+    private static BufferedImage decode( ByteBuffer bytes, int subsampling ) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream( new ByteBufferInputStream( bytes ) );
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders( in );
+            if( ! readers.hasNext() ) return null;
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput( in, true, true );
+                
+                ImageReadParam param = reader.getDefaultReadParam();
+                if( subsampling > 1 ) param.setSourceSubsampling( subsampling, subsampling, 0, 0 );
+                
+                return reader.read( 0, param );
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    //an input stream for the image, null if there is none
+    private ImageInputStream open( int id ) throws IOException {
+        ByteBuffer bytes = bytes( id );
+        if( bytes == null ) return null;
+        
+        return ImageIO.createImageInputStream( new ByteBufferInputStream( bytes ) );
+    }
+    
+    //the bytes of the image, null if there is none
+    private ByteBuffer bytes( int id ) throws IOException {
+        ByteBuffer bytes = document.source().image( id );
+        if( bytes != null ) return bytes;
+        
+        return embeddedBytes( id );
+    }
+    
+    //the bytes embedded in a flat file, null if none
+    private ByteBuffer embeddedBytes( int id ) {
+        Map<String,Object> plist = document.plist();
+        
+        List<Object> names  = (List<Object>) plist.get( "ImageList" );
+        List<Object> images = (List<Object>) plist.get( "Images" );
+        if( names == null || images == null ) return null;
+        
+        String prefix = "image" + id + ".";
+        for( int i = 0; i < names.size() && i < images.size(); i++ ) {
+            Object name = names.get( i );
+            if( !( name instanceof String ) || ! ((String) name).startsWith( prefix ) ) continue;
+            
+            Object data = images.get( i );
+            if( data instanceof PListData ) return ByteBuffer.wrap( ((PListData) data).bytes() );
+            if( data instanceof byte[] ) return ByteBuffer.wrap( (byte[]) data );
+        }
+        
+        return null;
+    }
+    
+    private static String hash( ByteBuffer bytes ) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance( "SHA-1" );
+            sha.update( bytes.duplicate() );
+            byte[] digest = sha.digest();
+            
+            StringBuilder buff = new StringBuilder( digest.length * 2 );
+            for( byte b : digest ) {
+                buff.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) );
+                buff.append( Character.forDigit( b & 0xf, 16 ) );
+            }
+            return buff.toString();
+        }
+        catch( NoSuchAlgorithmException ex ) {
+            //every JVM has SHA-1
+            throw new IllegalStateException( ex );
+        }
+    }
+    
+    //drop the entries for images that have been collected
+    private static void expunge() {
+        CachedImage ref;
+        while( ( ref = (CachedImage) cleared.poll() ) != null ) {
+            cache.remove( ref.key, ref );
+        }
+    }
+    
+    /**
+     * A soft reference that knows its cache key
+     */
+    private static final class CachedImage extends SoftReference<BufferedImage> {
+        final String key;
+        
+        CachedImage( String key, BufferedImage image, ReferenceQueue<BufferedImage> queue ) {
+            super( image, queue );
+            this.key = key;
+        }
+    }
+}
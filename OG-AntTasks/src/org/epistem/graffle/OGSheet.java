@@ -30,6 +30,10 @@ package org.epistem.graffle;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+
+import org.epistem.util.IntMap;
+
+import static org.epistem.graffle.CompactDict.intValue;
 import static org.epistem.graffle.OGUtils.*;
 
 /**
@@ -42,6 +46,7 @@ public final class OGSheet {
 
     private final Map<String,Object> dict;
     private List<OGGraphic> oggraphics;
+    private IntMap<OGGraphic> index; //all graphics by id, including group members
     
     /**
      * The layers
@@ -71,24 +76,48 @@ public final class OGSheet {
     /**
      * Get the graphics
      */
-    public List<OGGraphic> graphics() {
+    public synchronized List<OGGraphic> graphics() {
         if( oggraphics == null ) {
-            oggraphics = new ArrayList<OGGraphic>();
-            
             List<Object> graphics = (List<Object>) dict.get( "GraphicsList" );
+            oggraphics = new ArrayList<OGGraphic>( graphics.size() );
+            index      = new IntMap<OGGraphic>( graphics.size() );
+            
             for( Object dict : graphics ) {
-                oggraphics.add( new OGGraphic( this, null, (Map<String,Object>) dict ) );
+                OGGraphic graphic = new OGGraphic( this, null, (Map<String,Object>) dict );
+                oggraphics.add( graphic );
+                register( graphic );
             }
         }
         
         return oggraphics;
     }
     
+    /**
+     * Find a graphic on this sheet by id, including the members of groups
+     * and tables
+     * 
+     * @return null if there is none
+     */
+    public synchronized OGGraphic getGraphic( int id ) {
+        graphics();
+        return index.get( id );
+    }
+    
+    //index a graphic and the members of a group
+    private void register( OGGraphic graphic ) {
+        index.put( graphic.id(), graphic );
+        
+        OGGraphic.GraphicClass type = graphic.graphicClass();
+        if( type == OGGraphic.GraphicClass.Group || type == OGGraphic.GraphicClass.TableGroup ) {
+            for( OGGraphic member : graphic.graphics() ) register( member );
+        }
+    }
+    
     /**
      * Get the sheet's unique id
      */
     public int id() {
-        return (Integer) dict.get( "UniqueID" );
+        return intValue( dict, "UniqueID", 0 );
     }
     
     /**
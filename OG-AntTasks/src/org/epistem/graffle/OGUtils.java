@@ -27,12 +27,6 @@
 --------------------------------------------------------------------------------*/
 package org.epistem.graffle;
 
-import java.io.StringReader;
-
-import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultStyledDocument;
-import javax.swing.text.rtf.RTFEditorKit;
-
 /**
  * Utility methods
  *
@@ -41,27 +35,9 @@ import javax.swing.text.rtf.RTFEditorKit;
 public class OGUtils {
 
     /**
-     * Extract text from RTF
+     * Extract text from RTF, using the shared cache
      */
     static String unRTF( String s ) {
-        if( s == null ) return null;
-        
-        DefaultStyledDocument doc = new DefaultStyledDocument();
-        RTFEditorKit kit = new RTFEditorKit();
-        
-        try {
-            kit.read( new StringReader( s ), doc, 0 );
-        }
-        catch( Exception ex ) {
-            throw new RuntimeException( ex );
-        }
-        
-        try {
-            s = doc.getText( 0, doc.getLength() );
-        } catch( BadLocationException e ) {
-            throw new RuntimeException( e );
-        }
-        
-        return s;
+        return RTFCache.shared().text( s );
     }
 }
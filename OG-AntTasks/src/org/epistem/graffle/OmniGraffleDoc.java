@@ -31,75 +31,220 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-
-import javax.imageio.ImageIO;
-
-import org.epistem.graffle.OGGraphic.GraphicClass;
+import java.util.concurrent.*;
 
 /**
- * An OmniGraffle document
+ * An OmniGraffle document. Documents are safe to use from several threads.
  *
  * @author nickmain
  */
 @SuppressWarnings("unchecked")
 public final class OmniGraffleDoc {
 
-    private final File file;
+    private final GraffleSource source;
     private final Map<String, Object> plist;    
 
-    private Map<Integer,OGGraphic> graphics;
     private List<OGSheet> ogsheets;
+    private List<Object>  sheetDicts;
+    private OGSheet[]     sheetArray; //sheets made so far, by index
+    
+    //stroke properties by style dict, null if the plist is not canonical
+    private final Map<Object,OGGraphic.Stroke> strokes;
+    
+    private OGImages images;
+    
+    private static ExecutorService loader;
     
     /**
      * @param file the document file
      */
     public OmniGraffleDoc( File file ) throws Exception {
-        this.file = file;
-        plist = (Map<String, Object>) PListParser.parse( file );
+        this( file, PListParser.Mode.EAGER );
+    }
+    
+    /**
+     * @param file the document file
+     * @param mode how to decode the document
+     */
+    public OmniGraffleDoc( File file, PListParser.Mode mode ) throws Exception {
+        this( file, mode, null );
+    }
+    
+    /**
+     * Load a document, sharing identical subtrees with other documents 
+     * loaded with the same canonicalizer. Stroke styles are then read once 
+     * per distinct style rather than once per graphic.
+     * 
+     * @param file the document file
+     * @param mode how to decode the document
+     * @param canonicalizer the canonicalizer for the plist, null for none
+     */
+    public OmniGraffleDoc( File file, PListParser.Mode mode, PListCanonicalizer canonicalizer ) throws Exception {
+        this( GraffleSource.open( file ), mode, canonicalizer );
+    }
+    
+    /**
+     * @param source the document source - a file, package, zip or buffer
+     * @param mode how to decode the document
+     */
+    public OmniGraffleDoc( GraffleSource source, PListParser.Mode mode ) throws Exception {
+        this( source, mode, null );
+    }
+    
+    /**
+     * @param source the document source - a file, package, zip or buffer
+     * @param mode how to decode the document
+     * @param canonicalizer the canonicalizer for the plist, null for none
+     * @see #OmniGraffleDoc(File, PListParser.Mode, PListCanonicalizer)
+     */
+    public OmniGraffleDoc( GraffleSource source, PListParser.Mode mode, PListCanonicalizer canonicalizer ) throws Exception {
+        this.source = source;
+        
+        Object parsed = PListParser.parse( source, mode );
+        if( canonicalizer != null ) {
+            plist   = (Map<String, Object>) canonicalizer.canonical( parsed );
+            strokes = new IdentityHashMap<Object, OGGraphic.Stroke>();
+        }
+        else {
+            plist   = (Map<String, Object>) parsed;
+            strokes = null;
+        }
+    }
+    
+    /**
+     * Load only part of a document. Parts outside the projection will 
+     * appear to be missing.
+     * 
+     * @param file the document file
+     * @param projection the key paths to load - {@link PListProjection#MODEL}
+     *                   is enough for everything read through this class
+     */
+    public OmniGraffleDoc( File file, PListProjection projection ) throws Exception {
+        this( GraffleSource.open( file ), projection );
+    }
+    
+    /**
+     * Load only part of a document
+     * 
+     * @param source the document source - a file, package, zip or buffer
+     * @param projection the key paths to load
+     * @see #OmniGraffleDoc(File, PListProjection)
+     */
+    public OmniGraffleDoc( GraffleSource source, PListProjection projection ) throws Exception {
+        this.source = source;
+        plist = (Map<String, Object>) PListParser.parse( source, projection );
+        strokes = null;
+    }
+    
+    /**
+     * Load documents on a shared pool with a thread per processor.
+     * 
+     * @see #loadAll(Collection, PListParser.Mode, ExecutorService)
+     */
+    public static List<Future<OmniGraffleDoc>> loadAll( Collection<File> files ) {
+        return loadAll( files, PListParser.Mode.EAGER, loader() );
+    }
+    
+    /**
+     * Load documents concurrently. Each document is loaded by a separate 
+     * task, so the executor bounds the number loaded at once. Failures are
+     * reported by the futures.
+     * 
+     * @param files the document files
+     * @param mode how to decode the documents
+     * @param executor the executor for the loading tasks
+     * @return the futures for the documents, in the same order as the files
+     */
+    public static List<Future<OmniGraffleDoc>> loadAll( Collection<File> files, 
+                                                        final PListParser.Mode mode, 
+                                                        ExecutorService executor ) {
+        List<Future<OmniGraffleDoc>> futures = new ArrayList<Future<OmniGraffleDoc>>( files.size() );
+        for( final File file : files ) {
+            futures.add( executor.submit( new Callable<OmniGraffleDoc>() {
+                public OmniGraffleDoc call() throws Exception {
+                    return new OmniGraffleDoc( file, mode );
+                }
+            }));
+        }
+        
+        return futures;
+    }
+    
+    //get the shared executor for loading documents
+    private static synchronized ExecutorService loader() {
+        if( loader == null ) loader = PListParser.newDaemonPool( "graffle-loader" );
+        return loader;
     }
     
     /**
      * Get the file
+     * @return null if the document was not read from a file
      */
     public File file() {
-        return file;
+        return source.file();
     }
     
     /**
-     * Find a graphic by id
+     * Get the source of the document
+     */
+    public GraffleSource source() {
+        return source;
+    }
+    
+    /**
+     * Find a graphic by id. Sheets are made as they are searched, so the
+     * sheets before the one holding the graphic are not made.
      * @return may be null
      */
     public OGGraphic getGraphic( int id ) {
-        if( graphics == null ) {
-            graphics = new HashMap<Integer, OGGraphic>();
-            
-            for( OGSheet sheet : sheets() ) {
-                registerGraphics( sheet.graphics() );
-            }
+        //ids are only unique within a sheet - later sheets take precedence
+        for( int i = sheetCount() - 1; i >= 0; i-- ) {
+            OGGraphic graphic = sheet( i ).getGraphic( id );
+            if( graphic != null ) return graphic;
         }
-            
-        return graphics.get( id );
+        return null;
     }
     
-    private void registerGraphics( List<OGGraphic> gg ) {
-        for( OGGraphic graphic : gg ) {
-            graphics.put( graphic.id(), graphic );
-            
-            OGGraphic.GraphicClass type = graphic.graphicClass();
-            if( type == GraphicClass.Group || type == GraphicClass.TableGroup ) {
-                registerGraphics( graphic.graphics() );
+    /**
+     * Get the stroke properties of a style dict, memoized if the dict is
+     * canonical
+     */
+    OGGraphic.Stroke stroke( Map<String,Object> style ) {
+        if( strokes == null ) return OGGraphic.Stroke.of( style );
+        
+        synchronized( strokes ) {
+            OGGraphic.Stroke stroke = strokes.get( style );
+            if( stroke == null ) {
+                stroke = OGGraphic.Stroke.of( style );
+                strokes.put( style, stroke );
             }
-        }  
+            return stroke;
+        }
     }
     
     /**
-     * Read the image with the given id 
+     * Read the image with the given id. The image is cached and shared, so
+     * it must not be modified.
+     * 
+     * @return null if there is no such image
      */
     public BufferedImage readImage( int id ) throws IOException {
-        if( ! file.isDirectory() ) return null;
-        
-        File imageFile = new File( file, "image" + id + ".tiff" );        
-        return ImageIO.read( imageFile );
+        return images().read( id );
+    }
+    
+    /**
+     * Get the images
+     */
+    public synchronized OGImages images() {
+        if( images == null ) images = new OGImages( this );
+        return images;
+    }
+    
+    /**
+     * The root plist dict
+     */
+    Map<String,Object> plist() {
+        return plist;
     }
     
     /**
@@ -159,8 +304,65 @@ public final class OmniGraffleDoc {
     /**
      * Get the sheets
      */
-    public List<OGSheet> sheets() {
+    public synchronized List<OGSheet> sheets() {
         if( ogsheets == null ) {
+            int count = sheetCount();
+            
+            ogsheets = new ArrayList<OGSheet>( count );
+            for( int i = 0; i < count; i++ ) {
+                ogsheets.add( sheet( i ) );
+            }
+        }
+        
+        return ogsheets;
+    }
+    
+    /**
+     * Get the number of sheets, without making them
+     */
+    public synchronized int sheetCount() {
+        return sheetDicts().size();
+    }
+    
+    /**
+     * Get the title of a sheet, without making the sheet
+     * @throws IndexOutOfBoundsException if there is no such sheet
+     */
+    public synchronized String sheetTitle( int index ) {
+        Map<String,Object> dict = (Map<String,Object>) sheetDicts().get( index );
+        return (String) dict.get( "SheetTitle" );
+    }
+    
+    /**
+     * Get a sheet by index. Only the requested sheet is made.
+     * @throws IndexOutOfBoundsException if there is no such sheet
+     */
+    public synchronized OGSheet sheet( int index ) {
+        List<Object> dicts = sheetDicts();
+        
+        OGSheet sheet = sheetArray[ index ];
+        if( sheet == null ) {
+            sheet = new OGSheet( this, (Map<String,Object>) dicts.get( index ) );
+            sheetArray[ index ] = sheet;
+        }
+        return sheet;
+    }
+    
+    /**
+     * Get the first sheet with the given title. Only that sheet is made.
+     * @return null if there is none
+     */
+    public synchronized OGSheet sheet( String title ) {
+        int count = sheetCount();
+        for( int i = 0; i < count; i++ ) {
+            if( title.equals( sheetTitle( i ) ) ) return sheet( i );
+        }
+        return null;
+    }
+    
+    //the sheet dicts - a single sheet document is its own sheet
+    private List<Object> sheetDicts() {
+        if( sheetDicts == null ) {
             List<Object> sheets = (List<Object>) plist.get( "Sheets" );
             
             if( sheets == null ) {
@@ -168,12 +370,9 @@ public final class OmniGraffleDoc {
                 sheets.add( plist );
             }
             
-            ogsheets = new ArrayList<OGSheet>();
-            for( Object dict : sheets ) {
-                ogsheets.add( new OGSheet( this, (Map<String,Object>) dict ) );
-            }
+            sheetDicts = sheets;
+            sheetArray = new OGSheet[ sheets.size() ];
         }
-        
-        return ogsheets;
+        return sheetDicts;
     }
 }
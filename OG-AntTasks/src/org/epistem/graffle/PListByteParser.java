@@ -0,0 +1,817 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import org.epistem.graffle.PListProjection.Node;
+import org.epistem.util.Base64;
+
+import static org.epistem.graffle.PListPullParser.*;
+
+/**
+ * A byte level cursor over an UTF-8 xml PLIST held in a buffer. Element 
+ * text is decoded straight from the bytes, with the same line-end and 
+ * entity handling as an XML parser.
+ * 
+ * The cursor can leave sheets and graphics undecoded, as {@link LazyDict}
+ * facades that remember their offset in the buffer.
+ * 
+ * A cursor is not thread-safe but any number of cursors may share the 
+ * buffer.
+ *
+ * @author nickmain
+ */
+final class PListByteParser {
+
+    /** How much of the document to leave undecoded */
+    static enum Laziness {
+        /** Decode everything */
+        NONE,
+        
+        /** The top level document - sheets and graphics are lazy */
+        DOCUMENT,
+        
+        /** A sheet - graphics are lazy */
+        SHEET,
+        
+        /** The top level document - sheets are lazy but their contents are not */
+        SHEETS
+    }
+    
+    private static final int PLIST = 11;
+    
+    private final ByteBuffer buffer;
+    private final int limit;
+    private final StringBuilder text = new StringBuilder();
+    private final CompactDict.Builder entries = new CompactDict.Builder();
+    private SimpleDateFormat dateFormat;
+    private Base64.Decoder decoder;
+    
+    //whether data values are left encoded in the buffer
+    private final boolean deferData;
+    
+    private final StringPool pool = PListParser.stringPool();
+    
+    private int pos;
+    
+    //the current tag
+    private int     tagStart;
+    private int     kind;
+    private boolean closing;
+    private boolean empty;
+    
+    /**
+     * @param buffer the plist - from zero to the limit
+     * @param pos the offset to start at
+     * @param deferData whether to return data values as {@link PListData}
+     */
+    PListByteParser( ByteBuffer buffer, int pos, boolean deferData ) {
+        this.buffer    = buffer;
+        this.limit     = buffer.limit();
+        this.pos       = pos;
+        this.deferData = deferData;
+    }
+    
+    /**
+     * Parse a whole document
+     * 
+     * @param laziness NONE, DOCUMENT or SHEETS
+     */
+    static Object parse( ByteBuffer buffer, Laziness laziness ) throws IOException {
+        return parse( buffer, laziness, false );
+    }
+    
+    /**
+     * Parse a whole document
+     * 
+     * @param laziness NONE, DOCUMENT or SHEETS
+     * @param deferData whether to return data values as {@link PListData}
+     */
+    static Object parse( ByteBuffer buffer, Laziness laziness, boolean deferData ) throws IOException {
+        PListByteParser parser = new PListByteParser( buffer, 0, deferData );
+        
+        try {
+            while( parser.nextTag() ) {
+                if( parser.closing ) continue;
+                if( parser.kind == PLIST ) continue;
+                
+                return parser.value( laziness );
+            }
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            throw new IOException( "plist is truncated" );
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Parse a whole document, keeping only the parts in the projection
+     */
+    static Object parse( ByteBuffer buffer, PListProjection projection ) throws IOException {
+        PListByteParser parser = new PListByteParser( buffer, 0, false );
+        
+        try {
+            while( parser.nextTag() ) {
+                if( parser.closing ) continue;
+                if( parser.kind == PLIST ) continue;
+                
+                return parser.value( projection.root );
+            }
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            throw new IOException( "plist is truncated" );
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Decode the dict at the given offset
+     */
+    static Map<String,Object> parseDict( ByteBuffer buffer, int offset, Laziness laziness, boolean deferData ) {
+        PListByteParser parser = new PListByteParser( buffer, offset, deferData );
+        
+        try {
+            parser.nextTag();
+            return parser.dict( laziness );
+        }
+        catch( IOException ex ) {
+            //the buffer was already scanned so this is unexpected
+            throw new RuntimeException( ex );
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            throw new RuntimeException( "plist is truncated" );
+        }
+    }
+    
+    //decode the value for the current start tag
+    private Object value( Laziness laziness ) throws IOException {
+        switch( kind ) {
+            case DICT:  return dict( laziness );
+            case ARRAY: return array();
+            
+            case STRING:  readText(); return PListParser.string( text, pool );
+            case INTEGER: return CompactDict.box( intValue() );
+            case REAL:    return Double.valueOf( realValue() );
+            case DATA:    return data();
+            case DATE:    readText(); return date();
+            
+            case TRUE:  skipElement(); return Boolean.TRUE;
+            case FALSE: skipElement(); return Boolean.FALSE;
+            
+            default: 
+                skipElement(); 
+                return null;
+        }
+    }
+    
+    //decode the projected value for the current start tag - leaves are 
+    //only kept if their whole subtree is
+    private Object value( Node node ) throws IOException {
+        if( node == Node.ALL ) return value( Laziness.NONE );
+        
+        switch( kind ) {
+            case DICT:  return dict( node );
+            case ARRAY: return array( node );
+            
+            default: 
+                skipElement(); 
+                return null;
+        }
+    }
+    
+    //decode the projected dict for the current start tag
+    private Map<String,Object> dict( Node node ) throws IOException {
+        int mark = entries.start();
+        if( empty ) return entries.build( mark );
+        
+        String key = null;
+        while( nextTag() ) {
+            if( closing ) break;
+            
+            if( kind == KEY ) {
+                readText();
+                key = KeyTable.SHARED.internTrimmed( text );
+                continue;
+            }
+            
+            Node child = key != null ? node.child( key ) : null;
+            if( ! keeps( child ) ) skipElement();
+            else if( kind == INTEGER || kind == REAL ) putNumber( key, mark );
+            else entries.put( key, value( child ), mark );
+            key = null;
+        }
+        
+        return entries.build( mark );
+    }
+    
+    //decode the projected array for the current start tag
+    private List<Object> array( Node node ) throws IOException {
+        List<Object> array = new ArrayList<Object>();
+        if( empty ) return array;
+        
+        Node element = node.element();
+        while( nextTag() ) {
+            if( closing ) break;
+            
+            if( keeps( element ) ) array.add( value( element ) );
+            else skipElement();
+        }
+        
+        return array;
+    }
+    
+    //whether the value for the current start tag is kept
+    private boolean keeps( Node node ) {
+        if( node == null ) return false;
+        return node == Node.ALL || kind == DICT || kind == ARRAY;
+    }
+    
+    //decode the dict for the current start tag
+    private Map<String,Object> dict( Laziness laziness ) throws IOException {
+        int mark = entries.start();
+        if( empty ) return entries.build( mark );
+        
+        String key = null;
+        while( nextTag() ) {
+            if( closing ) break;
+            
+            if( kind == KEY ) {
+                readText();
+                key = KeyTable.SHARED.internTrimmed( text );
+                continue;
+            }
+            
+            if( kind == INTEGER || kind == REAL ) {
+                putNumber( key, mark );
+                key = null;
+                continue;
+            }
+            
+            Object value;
+            if( kind == ARRAY && laziness == Laziness.DOCUMENT && "Sheets".equals( key ) ) {
+                value = array( Laziness.SHEET );
+            }
+            else if( kind == ARRAY && laziness == Laziness.SHEETS && "Sheets".equals( key ) ) {
+                value = array( Laziness.NONE );
+            }
+            else if( kind == ARRAY 
+                  && ( laziness == Laziness.DOCUMENT || laziness == Laziness.SHEET ) 
+                  && "GraphicsList".equals( key ) ) {
+                value = array( Laziness.NONE );
+            }
+            else {
+                value = value( Laziness.NONE );
+            }
+            
+            if( key != null ) {
+                entries.put( key, value, mark );
+                key = null;
+            }
+        }
+        
+        return entries.build( mark );
+    }
+    
+    //decode the number for the current start tag into the innermost dict,
+    //without boxing it
+    private void putNumber( String key, int mark ) throws IOException {
+        if( kind == INTEGER ) {
+            int number = intValue();
+            if( key != null ) entries.putInt( key, number, mark );
+        }
+        else {
+            double number = realValue();
+            if( key != null ) entries.putReal( key, number, mark );
+        }
+    }
+    
+    //decode the array for the current start tag
+    private List<Object> array() throws IOException {
+        List<Object> array = new ArrayList<Object>();
+        if( empty ) return array;
+        
+        while( nextTag() ) {
+            if( closing ) break;
+            array.add( value( Laziness.NONE ) );
+        }
+        
+        return array;
+    }
+
+    //scan the array for the current start tag, leaving the dicts in it 
+    //undecoded
+    private List<Object> array( Laziness dictLaziness ) throws IOException {
+        List<Object> array = new ArrayList<Object>();
+        if( empty ) return array;
+        
+        while( nextTag() ) {
+            if( closing ) break;
+            
+            if( kind == DICT && ! empty ) {
+                array.add( new LazyDict( buffer, tagStart, dictLaziness, deferData ) );
+                skipElement();
+            }
+            else {
+                array.add( value( Laziness.NONE ) );
+            }
+        }
+        
+        return array;
+    }
+    
+    /**
+     * Move to the next element tag, skipping text, comments, processing
+     * instructions and the doctype.
+     * 
+     * @return false if the end of the buffer was reached
+     */
+    private boolean nextTag() throws IOException {
+        while( true ) {
+            while( pos < limit && buffer.get( pos ) != '<' ) pos++;
+            if( pos >= limit ) return false;
+            
+            tagStart = pos;
+            byte next = buffer.get( pos + 1 );
+            
+            if( next == '?' ) {
+                pos = find( "?>", pos + 2 ) + 2;
+                continue;
+            }
+            
+            if( next == '!' ) {
+                if( startsWith( "<!--", pos ) ) {
+                    pos = find( "-->", pos + 4 ) + 3;
+                }
+                else if( startsWith( "<![CDATA[", pos ) ) {
+                    pos = find( "]]>", pos + 9 ) + 3;
+                }
+                else {
+                    skipDeclaration();
+                }
+                continue;
+            }
+            
+            closing = next == '/';
+            int nameStart = closing ? pos + 2 : pos + 1;
+            int nameEnd = nameStart;
+            while( true ) {
+                byte b = buffer.get( nameEnd );
+                if( b <= ' ' || b == '/' || b == '>' ) break;
+                nameEnd++;
+            }
+            
+            kind = kindOf( nameStart, nameEnd - nameStart );
+            
+            //find the end of the tag, allowing for quoted attribute values
+            int p = nameEnd;
+            byte quote = 0;
+            while( true ) {
+                byte b = buffer.get( p );
+                if( quote != 0 ) {
+                    if( b == quote ) quote = 0;
+                }
+                else if( b == '"' || b == '\'' ) quote = b;
+                else if( b == '>' ) break;
+                p++;
+            }
+            
+            empty = buffer.get( p - 1 ) == '/';
+            pos = p + 1;
+            return true;
+        }
+    }
+    
+    //skip a <!DOCTYPE ...> or similar declaration, including any internal subset
+    private void skipDeclaration() {
+        int depth = 0;
+        while( true ) {
+            byte b = buffer.get( pos++ );
+            if( b == '[' ) depth++;
+            else if( b == ']' ) depth--;
+            else if( b == '>' && depth == 0 ) return;
+        }
+    }
+    
+    //skip the rest of the element for the current start tag
+    private void skipElement() throws IOException {
+        if( empty ) return;
+        
+        int depth = 1;
+        while( depth > 0 && nextTag() ) {
+            if( closing ) depth--;
+            else if( ! empty ) depth++;
+        }
+    }
+    
+    /**
+     * Read the text of the current element into the text buffer and move 
+     * past the end tag. 
+     */
+    private void readText() throws IOException {
+        text.setLength( 0 );
+        if( empty ) return;
+        
+        while( true ) {
+            byte b = buffer.get( pos );
+            
+            if( b == '<' ) {
+                byte next = buffer.get( pos + 1 );
+                
+                if( next == '/' ) {
+                    nextTag();
+                    return;
+                }
+                
+                if( startsWith( "<![CDATA[", pos ) ) {
+                    int end = find( "]]>", pos + 9 );
+                    pos += 9;
+                    while( pos < end ) appendChar();
+                    pos = end + 3;
+                }
+                else if( startsWith( "<!--", pos ) ) {
+                    pos = find( "-->", pos + 4 ) + 3;
+                }
+                else if( next == '?' ) {
+                    pos = find( "?>", pos + 2 ) + 2;
+                }
+                else {
+                    throw new IOException( "unexpected element in text at offset " + pos );
+                }
+            }
+            else if( b == '&' ) {
+                readEntity();
+            }
+            else {
+                appendChar();
+            }
+        }
+    }
+    
+    //append the character at the current position, normalizing line ends
+    private void appendChar() throws IOException {
+        int b = buffer.get( pos++ );
+        
+        if( b >= 0 ) {
+            if( b == '\r' ) {
+                if( pos < limit && buffer.get( pos ) == '\n' ) pos++;
+                b = '\n';
+            }
+            text.append( (char) b );
+            return;
+        }
+        
+        //multi-byte UTF-8 sequence
+        int count;
+        int cp;
+        if     ( ( b & 0xe0 ) == 0xc0 ) { count = 1; cp = b & 0x1f; }
+        else if( ( b & 0xf0 ) == 0xe0 ) { count = 2; cp = b & 0x0f; }
+        else if( ( b & 0xf8 ) == 0xf0 ) { count = 3; cp = b & 0x07; }
+        else throw new IOException( "invalid UTF-8 at offset " + ( pos - 1 ) );
+        
+        for( int i = 0; i < count; i++ ) {
+            int c = buffer.get( pos++ );
+            if( ( c & 0xc0 ) != 0x80 ) throw new IOException( "invalid UTF-8 at offset " + ( pos - 1 ) );
+            cp = ( cp << 6 ) | ( c & 0x3f );
+        }
+        
+        text.appendCodePoint( cp );
+    }
+    
+    //decode the entity or character reference at the current position
+    private void readEntity() throws IOException {
+        int end = pos + 1;
+        while( buffer.get( end ) != ';' ) {
+            if( end - pos > 10 ) throw new IOException( "invalid entity at offset " + pos );
+            end++;
+        }
+        
+        int start = pos + 1;
+        pos = end + 1;
+        
+        if( buffer.get( start ) == '#' ) {
+            int cp = 0;
+            if( buffer.get( start + 1 ) == 'x' ) {
+                for( int i = start + 2; i < end; i++ ) cp = cp * 16 + Character.digit( buffer.get( i ), 16 );
+            }
+            else {
+                for( int i = start + 1; i < end; i++ ) cp = cp * 10 + Character.digit( buffer.get( i ), 10 );
+            }
+            
+            text.appendCodePoint( cp );
+            return;
+        }
+        
+        int length = end - start;
+        if     ( length == 2 && startsWith( "lt",   start ) ) text.append( '<' );
+        else if( length == 2 && startsWith( "gt",   start ) ) text.append( '>' );
+        else if( length == 3 && startsWith( "amp",  start ) ) text.append( '&' );
+        else if( length == 4 && startsWith( "quot", start ) ) text.append( '"' );
+        else if( length == 4 && startsWith( "apos", start ) ) text.append( '\'' );
+        else throw new IOException( "unknown entity at offset " + ( start - 1 ) );
+    }
+
+    //map an element name in the buffer to its kind
+    private int kindOf( int start, int length ) {
+        switch( buffer.get( start ) ) {
+            case 'a': return matches( "array",   start, length ) ? ARRAY   : OTHER;
+            case 'k': return matches( "key",     start, length ) ? KEY     : OTHER;
+            case 's': return matches( "string",  start, length ) ? STRING  : OTHER;
+            case 'i': return matches( "integer", start, length ) ? INTEGER : OTHER;
+            case 'r': return matches( "real",    start, length ) ? REAL    : OTHER;
+            case 't': return matches( "true",    start, length ) ? TRUE    : OTHER;
+            case 'f': return matches( "false",   start, length ) ? FALSE   : OTHER;
+            case 'p': return matches( "plist",   start, length ) ? PLIST   : OTHER;
+            case 'd': 
+                if( matches( "dict", start, length ) ) return DICT;
+                if( matches( "data", start, length ) ) return DATA;
+                if( matches( "date", start, length ) ) return DATE;
+                return OTHER;
+                
+            default: return OTHER;
+        }
+    }
+    
+    private boolean matches( String name, int start, int length ) {
+        return length == name.length() && startsWith( name, start );
+    }
+    
+    private boolean startsWith( String s, int start ) {
+        if( start + s.length() > limit ) return false;
+        
+        for( int i = 0; i < s.length(); i++ ) {
+            if( buffer.get( start + i ) != s.charAt( i ) ) return false;
+        }
+        return true;
+    }
+    
+    //find the offset of the given ascii string
+    private int find( String s, int start ) throws IOException {
+        for( int i = start; i + s.length() <= limit; i++ ) {
+            if( startsWith( s, i ) ) return i;
+        }
+        
+        throw new IOException( "plist is truncated - missing " + s );
+    }
+    
+    /**
+     * Whether the buffer holds an UTF-8 (or ASCII) document, according to
+     * the byte order mark and the xml declaration.
+     */
+    static boolean isUTF8( ByteBuffer buffer ) {
+        int limit = buffer.limit();
+        if( limit < 2 ) return true;
+        
+        //UTF-16 or UTF-32 byte order marks or a leading zero byte
+        int b0 = buffer.get( 0 ) & 0xff;
+        int b1 = buffer.get( 1 ) & 0xff;
+        if( b0 == 0xfe || b0 == 0xff || b0 == 0 || b1 == 0 ) return false;
+        
+        int start = ( b0 == 0xef ) ? 3 : 0;
+        PListByteParser parser = new PListByteParser( buffer, start, false );
+        if( ! parser.startsWith( "<?xml", start ) ) return true;
+        
+        int end;
+        try {
+            end = parser.find( "?>", start );
+        }
+        catch( IOException ex ) {
+            return false;
+        }
+        
+        StringBuilder decl = new StringBuilder();
+        for( int i = start; i < end; i++ ) decl.append( (char) buffer.get( i ) );
+        
+        String declaration = decl.toString().replace( '\'', '"' );
+        int index = declaration.indexOf( "encoding" );
+        if( index < 0 ) return true;
+        
+        int open  = declaration.indexOf( '"', index );
+        int close = declaration.indexOf( '"', open + 1 );
+        if( open < 0 || close < 0 ) return false;
+        
+        String encoding = declaration.substring( open + 1, close ).trim();
+        return encoding.equalsIgnoreCase( "UTF-8" )
+            || encoding.equalsIgnoreCase( "UTF8" )
+            || encoding.equalsIgnoreCase( "US-ASCII" )
+            || encoding.equalsIgnoreCase( "ASCII" );
+    }
+    
+    //skip whitespace from the current position
+    private void skipSpace() {
+        while( pos < limit && ( buffer.get( pos ) & 0xff ) <= ' ' ) pos++;
+    }
+    
+    //whether the current position is at a closing tag - if so move past it
+    private boolean atClosingTag() throws IOException {
+        if( pos + 1 < limit && buffer.get( pos ) == '<' && buffer.get( pos + 1 ) == '/' ) {
+            nextTag();
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Parse an integer straight from the bytes. Falls back to the text for
+     * anything unusual.
+     */
+    private int intValue() throws IOException {
+        if( ! empty ) {
+            int start = pos;
+            skipSpace();
+            
+            boolean negative = false;
+            if( pos < limit && ( buffer.get( pos ) == '-' || buffer.get( pos ) == '+' ) ) {
+                negative = buffer.get( pos ) == '-';
+                pos++;
+            }
+            
+            int digitStart = pos;
+            long value = 0;
+            while( pos < limit && pos - digitStart < 10 ) {
+                int b = buffer.get( pos );
+                if( b < '0' || b > '9' ) break;
+                value = value * 10 + ( b - '0' );
+                pos++;
+            }
+            
+            if( pos > digitStart ) {
+                skipSpace();
+                if( negative ) value = -value;
+                if( value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE && atClosingTag() ) {
+                    return (int) value;
+                }
+            }
+            
+            pos = start;
+        }
+        
+        readText(); 
+        return parseInt( text );
+    }
+    
+    //exactly representable powers of ten
+    private static final double[] POWERS_OF_TEN = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11, 
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    /**
+     * Parse a real straight from the bytes. The value is only computed 
+     * directly when the result is exact (at most 15 significant digits and 
+     * a small exponent), otherwise this falls back to Double.valueOf.
+     */
+    private double realValue() throws IOException {
+        if( ! empty ) {
+            int start = pos;
+            skipSpace();
+            
+            boolean negative = false;
+            if( pos < limit && ( buffer.get( pos ) == '-' || buffer.get( pos ) == '+' ) ) {
+                negative = buffer.get( pos ) == '-';
+                pos++;
+            }
+            
+            long mantissa = 0;
+            int  digits = 0;
+            int  mantissaStart = pos;
+            int  fractionDigits = 0;
+            boolean point = false;
+            boolean ok = true;
+            
+            while( pos < limit ) {
+                int b = buffer.get( pos );
+                if( b >= '0' && b <= '9' ) {
+                    if( mantissa > 0 || b != '0' ) digits++;
+                    mantissa = mantissa * 10 + ( b - '0' );
+                    if( point ) fractionDigits++;
+                    if( digits > 15 ) { ok = false; break; }
+                }
+                else if( b == '.' && ! point ) point = true;
+                else break;
+                pos++;
+            }
+            
+            //need at least one digit
+            if( pos - mantissaStart == ( point ? 1 : 0 ) ) ok = false;
+            
+            int exponent = 0;
+            if( ok && pos < limit && ( buffer.get( pos ) == 'e' || buffer.get( pos ) == 'E' ) ) {
+                pos++;
+                boolean negativeExponent = false;
+                if( pos < limit && ( buffer.get( pos ) == '-' || buffer.get( pos ) == '+' ) ) {
+                    negativeExponent = buffer.get( pos ) == '-';
+                    pos++;
+                }
+                
+                int expStart = pos;
+                while( pos < limit && pos - expStart < 4 ) {
+                    int b = buffer.get( pos );
+                    if( b < '0' || b > '9' ) break;
+                    exponent = exponent * 10 + ( b - '0' );
+                    pos++;
+                }
+                
+                if( pos == expStart ) ok = false;
+                if( negativeExponent ) exponent = -exponent;
+            }
+            
+            exponent -= fractionDigits;
+            
+            if( ok ) {
+                skipSpace();
+                
+                if( exponent >= -22 && exponent <= 22 && atClosingTag() ) {
+                    double value = mantissa;
+                    if( exponent < 0 ) value /= POWERS_OF_TEN[ -exponent ];
+                    else               value *= POWERS_OF_TEN[ exponent ];
+                    
+                    return negative ? -value : value;
+                }
+            }
+            
+            pos = start;
+        }
+        
+        readText(); 
+        return Double.parseDouble( trimmed( text ) );
+    }
+    
+    /**
+     * Decode base64 data straight from the bytes, or just note where it is 
+     * if data is deferred. Falls back to the text for entities and CDATA.
+     */
+    private Object data() throws IOException {
+        if( empty ) return new byte[0];
+        if( decoder == null ) decoder = new Base64.Decoder();
+        
+        int start = pos;
+        int end   = start;
+        while( end < limit ) {
+            byte b = buffer.get( end );
+            if( b == '<' || b == '&' ) break;
+            end++;
+        }
+        
+        try {
+            if( end + 1 < limit && buffer.get( end ) == '<' && buffer.get( end + 1 ) == '/' ) {
+                pos = end;
+                nextTag();
+                
+                if( deferData ) return new PListData( buffer, start, end );
+                decoder.decode( buffer, start, end );
+            }
+            else {
+                readText();
+                decoder.decode( text );
+            }
+            
+            return decoder.toByteArray();
+        } 
+        catch( IOException ex ) {
+            decoder.reset();
+            throw new IOException( "invalid base64 value" );
+        }
+    }
+    
+    private Date date() throws IOException {
+        if( dateFormat == null ) dateFormat = dateFormat();
+        
+        try {
+            return dateFormat.parse( trimmed( text ) );
+        } catch( ParseException ex ) {
+            throw new IOException( "invalid date " + text );
+        }
+    }
+}
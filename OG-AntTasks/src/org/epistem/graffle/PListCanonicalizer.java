@@ -0,0 +1,222 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.*;
+
+/**
+ * Hash-conses plist trees so that equal subtrees share one instance. Style
+ * dicts and text attributes are often identical across thousands of 
+ * graphics, and across documents made from the same stencils, so sharing
+ * them saves memory and lets derived values be memoized per subtree.
+ * 
+ * Dicts decoded by the plist parsers and arrays are shared. Other maps have
+ * their values canonicalized in place but are not shared, and dicts that 
+ * have not yet been lazily decoded are left alone. Lists and maps that 
+ * cannot be modified are copied rather than updated, so callers must use
+ * the returned tree. A canonical tree must be treated as read-only.
+ * 
+ * A canonicalizer holds on to every subtree it has seen, so the same one
+ * can be used for a batch of documents and then dropped or cleared. It is
+ * safe to use from several threads.
+ *
+ * @author nickmain
+ */
+@SuppressWarnings("unchecked")
+public final class PListCanonicalizer {
+
+    private final Map<Consed,Object> table = new HashMap<Consed,Object>();
+    
+    /**
+     * Canonicalize a plist tree
+     * 
+     * @return the canonical equivalent of the plist
+     */
+    public synchronized Object canonical( Object plist ) {
+        if( plist instanceof CompactDict ) {
+            CompactDict dict = (CompactDict) plist;
+            dict.canonicalize( this );
+            return intern( dict, dict.shallowHash() );
+        }
+        
+        if( plist instanceof List ) {
+            List<Object> list = (List<Object>) plist;
+            Object[] elements = list.toArray();
+            boolean changed = false;
+            int hash = elements.length;
+            for( int i = 0; i < elements.length; i++ ) {
+                Object canonical = canonical( elements[i] );
+                if( canonical != elements[i] ) {
+                    elements[i] = canonical;
+                    changed = true;
+                }
+                
+                hash = 31 * hash + shallowHash( canonical );
+            }
+            
+            if( changed ) list = setElements( list, elements );
+            return intern( list, hash );
+        }
+        
+        if( plist instanceof Map && ! ( plist instanceof LazyDict ) ) {
+            Map<String,Object> map = (Map<String,Object>) plist;
+            Map<String,Object> canonicals = new LinkedHashMap<String,Object>();
+            boolean changed = false;
+            for( Map.Entry<String,Object> entry : map.entrySet() ) {
+                Object value = entry.getValue();
+                Object canonical = canonical( value );
+                if( canonical != value ) changed = true;
+                canonicals.put( entry.getKey(), canonical );
+            }
+            
+            if( changed ) return setValues( map, canonicals );
+        }
+        
+        return plist;
+    }
+    
+    //write the canonical elements back, copying a list that cannot be modified
+    private static List<Object> setElements( List<Object> list, Object[] elements ) {
+        try {
+            for( ListIterator<Object> it = list.listIterator(); it.hasNext(); ) {
+                it.next();
+                it.set( elements[ it.previousIndex() ] );
+            }
+            return list;
+        }
+        catch( UnsupportedOperationException ex ) {
+            return new ArrayList<Object>( Arrays.asList( elements ) );
+        }
+    }
+    
+    //write the canonical values back, copying a map that cannot be modified
+    private static Map<String,Object> setValues( Map<String,Object> map, Map<String,Object> canonicals ) {
+        try {
+            for( Map.Entry<String,Object> entry : map.entrySet() ) {
+                Object canonical = canonicals.get( entry.getKey() );
+                if( canonical != entry.getValue() ) entry.setValue( canonical );
+            }
+            return map;
+        }
+        catch( UnsupportedOperationException ex ) {
+            return canonicals;
+        }
+    }
+    
+    /**
+     * The number of distinct subtrees held
+     */
+    public synchronized int size() {
+        return table.size();
+    }
+    
+    /**
+     * Forget all the subtrees. Trees that were already canonicalized are 
+     * not affected, but will not be shared with later ones.
+     */
+    public synchronized void clear() {
+        table.clear();
+    }
+    
+    //get the canonical subtree
+    private Object intern( Object subtree, int hash ) {
+        Consed key = new Consed( subtree, hash );
+        Object canonical = table.get( key );
+        if( canonical != null ) return canonical;
+        
+        table.put( key, subtree );
+        return subtree;
+    }
+    
+    /**
+     * Hash a value within a subtree. Strings, numbers and booleans hash by
+     * value, anything else by identity since it is already canonical or is 
+     * not shared.
+     */
+    static int shallowHash( Object value ) {
+        if( value == null ) return 0;
+        if( isScalar( value ) ) return value.hashCode();
+        return System.identityHashCode( value );
+    }
+    
+    /**
+     * Compare values within subtrees, by value for scalars and identity for 
+     * anything else
+     */
+    static boolean shallowEquals( Object a, Object b ) {
+        if( a == b ) return true;
+        if( a == null || b == null ) return false;
+        return isScalar( a ) && a.equals( b );
+    }
+    
+    private static boolean isScalar( Object value ) {
+        return value instanceof String 
+            || value instanceof Number 
+            || value instanceof Boolean;
+    }
+    
+    /**
+     * A table key comparing subtrees by their immediate contents
+     */
+    private static final class Consed {
+        final Object subtree;
+        final int hash;
+        
+        Consed( Object subtree, int hash ) {
+            this.subtree = subtree;
+            this.hash    = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals( Object obj ) {
+            if( !( obj instanceof Consed ) ) return false;
+            Consed consed = (Consed) obj;
+            if( consed.hash != hash ) return false;
+            
+            if( subtree instanceof CompactDict ) {
+                return consed.subtree instanceof CompactDict
+                    && ((CompactDict) subtree).shallowEquals( (CompactDict) consed.subtree );
+            }
+            
+            if( consed.subtree instanceof CompactDict ) return false;
+            
+            List<?> list  = (List<?>) subtree;
+            List<?> other = (List<?>) consed.subtree;
+            if( list.size() != other.size() ) return false;
+            for( int i = 0; i < list.size(); i++ ) {
+                if( ! shallowEquals( list.get( i ), other.get( i ) ) ) return false;
+            }
+            return true;
+        }
+    }
+}
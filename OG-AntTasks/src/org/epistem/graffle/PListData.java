@@ -0,0 +1,99 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.epistem.util.Base64;
+
+/**
+ * A plist data value that is still base64 encoded in the document buffer.
+ * The bytes are decoded every time they are asked for, so a blob that is
+ * never used is never decoded and a blob that is used once is not kept.
+ *
+ * @author nickmain
+ */
+public final class PListData {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+    
+    /**
+     * @param buffer the document buffer
+     * @param start the offset of the base64 text
+     * @param end the offset after the base64 text
+     */
+    PListData( ByteBuffer buffer, int start, int end ) {
+        this.buffer = buffer;
+        this.start  = start;
+        this.end    = end;
+    }
+    
+    /**
+     * Decode the data
+     * @return a new array each time
+     */
+    public byte[] bytes() {
+        Base64.Decoder decoder = new Base64.Decoder();
+        try {
+            decoder.decode( buffer, start, end );
+            return decoder.toByteArray();
+        }
+        catch( IOException ex ) {
+            //the text is only checked when it is decoded
+            throw new IllegalStateException( "invalid base64 value", ex );
+        }
+    }
+    
+    /**
+     * The length of the encoded text, including any whitespace
+     */
+    public int encodedLength() {
+        return end - start;
+    }
+    
+    @Override
+    public boolean equals( Object obj ) {
+        if( obj == this ) return true;
+        if( !( obj instanceof PListData ) ) return false;
+        return Arrays.equals( bytes(), ((PListData) obj).bytes() );
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode( bytes() );
+    }
+    
+    @Override
+    public String toString() {
+        return "PListData[" + encodedLength() + " base64 chars]";
+    }
+}
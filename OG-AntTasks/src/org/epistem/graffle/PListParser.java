@@ -27,18 +27,20 @@
 --------------------------------------------------------------------------------*/
 package org.epistem.graffle;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.*;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.epistem.io.ByteBufferInputStream;
 import org.epistem.util.Base64;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -61,9 +63,14 @@ public class PListParser extends DefaultHandler {
     private String key;
     private LinkedList<Object> stack = new LinkedList<Object>();
 
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat( "yyyy'-'MM'-'dd'T'HH':'mm':'ss'Z'" );
+    //created when needed - a format cannot be shared between threads
+    private SimpleDateFormat dateFormat;
     
-    private static final byte[] GZIP_SIG = { 0x1f, (byte) 0x8b, 0x08, 0x00 };
+    private final StringPool pool = stringPool;
+    
+    //decodes data elements as their text arrives - null when not in one
+    private Base64.Decoder data;
+    private Base64.Decoder decoder;
     
     //push current item onto the stack
     private void push() {
@@ -107,6 +114,17 @@ public class PListParser extends DefaultHandler {
     
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
+        if( data != null ) {
+            try {
+                data.decode( ch, start, length );
+            } catch( IOException ex ) {
+                data.reset();
+                data = null;
+                throw new SAXException( "invalide base64 value" );
+            }
+            return;
+        }
+        
         text.append( ch, start, length );
     }
 
@@ -120,13 +138,16 @@ public class PListParser extends DefaultHandler {
         }
         else if( name.equals( "data" ) ) {
             try{
-                plistObject = Base64.decode( text.toString().trim() );
-            } catch( Exception ex ) {
+                plistObject = data.toByteArray();
+            } catch( IOException ex ) {
                 throw new SAXException( "invalide base64 value" );
+            } finally {
+                data = null;
             }
         }
         else if( name.equals( "date" ) ) {
             try {
+                if( dateFormat == null ) dateFormat = PListPullParser.dateFormat();
                 plistObject = dateFormat.parse( text.toString().trim() );
             } catch( ParseException ex ) {
                 throw new SAXException( ex );
@@ -137,13 +158,13 @@ public class PListParser extends DefaultHandler {
             pop();
         }
         else if( name.equals( "real" ) ) {
-            plistObject = new Double( text.toString().trim() );
+            plistObject = Double.valueOf( text.toString().trim() );
         }
         else if( name.equals( "integer" ) ) {
-            plistObject = new Integer( text.toString().trim() );
+            plistObject = CompactDict.box( Integer.parseInt( text.toString().trim() ) );
         }
         else if( name.equals( "string" ) ) {
-            plistObject = text.toString();
+            plistObject = string( text, pool );
         }
         else if( name.equals( "key" ) ) {
             key = text.toString().trim();
@@ -182,44 +203,428 @@ public class PListParser extends DefaultHandler {
             push();
             dict = new HashMap<String, Object>();
         }
+        else if( name.equals( "data" ) ) {
+            if( decoder == null ) decoder = new Base64.Decoder();
+            data = decoder;
+        }
+    }
+
+    /**
+     * The plist DTD is never loaded - it only declares the elements
+     */
+    @Override
+    public InputSource resolveEntity( String publicId, String systemId ) {
+        return new InputSource( new StringReader( "" ) );
     }
 
     /**
-     * Parse a PLIST file.
+     * Parse a PLIST file using the shared session.
      * 
-     * @param file the file to parse
+     * @param file the file to parse - binary plists are passed to the
+     *             {@link BinaryPListParser}
      * @return the object contained in the plist - usually a Map or List
      */
     public static Object parse( File file ) throws Exception {
-        if( file.isDirectory() ) file = new File( file, "data.plist" );
+        return session.parse( file );
+    }
+    
+    /**
+     * Parse a batch of PLIST files using the shared session.
+     * 
+     * @return the objects contained in the plists, in the same order
+     */
+    public static List<Object> parseAll( Collection<File> files ) throws Exception {
+        return session.parseAll( files );
+    }
+    
+    private static final Session session = new Session();
+    
+    /**
+     * A pool of configured SAX parsers, one per thread, that are reused 
+     * across files. External DTDs are never loaded, so parsing does not 
+     * depend on the network.
+     */
+    public static final class Session {
 
-        SAXParserFactory fact = SAXParserFactory.newInstance();
-        fact.setNamespaceAware( false );
-        fact.setValidating( false );
-        SAXParser parser = fact.newSAXParser();
+        //feature to skip the external DTD, where supported
+        private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+        
+        private final SAXParserFactory factory;
+        
+        private final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>() {
+            @Override protected SAXParser initialValue() {
+                try {
+                    return factory.newSAXParser();
+                }
+                catch( Exception ex ) {
+                    throw new RuntimeException( ex );
+                }
+            }
+        };
+        
+        public Session() {
+            factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware( false );
+            factory.setValidating( false );
+            
+            try {
+                factory.setFeature( LOAD_EXTERNAL_DTD, false );
+            }
+            catch( Exception ex ) {
+                //the entity resolver in the handler takes care of it
+            }
+        }
+        
+        /**
+         * Parse a PLIST file with the parser for the current thread.
+         * 
+         * @param file the file to parse - binary plists are passed to the
+         *             {@link BinaryPListParser}
+         * @return the object contained in the plist - usually a Map or List
+         */
+        public Object parse( File file ) throws Exception {
+            ByteBuffer bytes = GraffleSource.open( file ).plist();
+            if( BinaryPListParser.isBinary( bytes ) ) {
+                return BinaryPListParser.parse( bytes );
+            }
+            
+            PListParser plist = new PListParser();
+            
+            InputStream stream = PListPullParser.open( new ByteBufferInputStream( bytes ) );
+            if( BinaryPListParser.isBinary( stream ) ) {
+                //a gzipped binary plist
+                try {
+                    return BinaryPListParser.parse( PListPullParser.readAll( stream, bytes.limit() ) );
+                }
+                finally {
+                    stream.close();
+                }
+            }
+            
+            SAXParser parser = parsers.get();
+            try {
+                InputSource source = new InputSource( stream );
+                source.setSystemId( file.toURI().toString() );
+                parser.parse( source, plist );
+            }
+            finally {
+                parser.reset();
+                stream.close();
+            }
+            
+            return plist.plistObject;
+        }
+        
+        /**
+         * Parse a batch of PLIST files on the current thread.
+         * 
+         * @return the objects contained in the plists, in the same order
+         */
+        public List<Object> parseAll( Collection<File> files ) throws Exception {
+            List<Object> plists = new ArrayList<Object>( files.size() );
+            for( File file : files ) {
+                plists.add( parse( file ) );
+            }
+            
+            return plists;
+        }
+    }
+    
+    /**
+     * How a PLIST file is decoded
+     */
+    public static enum Mode {
+        /** Decode the whole document - see {@link #parseEager(File)} */
+        EAGER,
+        
+        /** Decode sheets and graphics on first access - see {@link #parseLazy(File)} */
+        LAZY,
+        
+        /** Decode the sheets in parallel - see {@link #parseParallel(File)} */
+        PARALLEL
+    }
+    
+    private static ExecutorService sharedExecutor;
+    
+    private static volatile StringPool stringPool;
+    
+    /**
+     * Set the pool used by all the parsers to de-duplicate string values.
+     * Parses that are under way carry on with the pool they started with.
+     * 
+     * @param pool the pool to use, null (the default) for none
+     */
+    public static void setStringPool( StringPool pool ) {
+        stringPool = pool;
+    }
+    
+    /**
+     * Get the pool used to de-duplicate string values
+     * @return null if there is none
+     */
+    public static StringPool stringPool() {
+        return stringPool;
+    }
+    
+    /**
+     * Make a string value using the given pool, if any
+     */
+    static String string( CharSequence chars, StringPool pool ) {
+        return pool != null ? pool.intern( chars ) : chars.toString();
+    }
+    
+    /**
+     * Parse a PLIST file
+     * 
+     * @param file the file to parse
+     * @param mode how to decode the file
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parse( File file, Mode mode ) throws Exception {
+        return parse( GraffleSource.open( file ), mode );
+    }
+    
+    /**
+     * Parse the plist of a document source
+     * 
+     * @param source the document
+     * @param mode how to decode the plist
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parse( GraffleSource source, Mode mode ) throws Exception {
+        switch( mode ) {
+            case LAZY:     return decode( source.plist(), PListByteParser.Laziness.DOCUMENT, false );
+            case PARALLEL: return decodeSheets( decode( source.plist(), PListByteParser.Laziness.SHEETS, false ), sharedExecutor() );
+            default:       return decode( source.plist(), PListByteParser.Laziness.NONE, false );
+        }
+    }
+    
+    /**
+     * Parse a PLIST file completely. Uncompressed UTF-8 files are memory 
+     * mapped and decoded with a byte level lexer. Binary files are passed to
+     * the {@link BinaryPListParser} and anything else to the 
+     * {@link PListPullParser}. The file is only opened once.
+     * 
+     * @param file the file to parse
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parseEager( File file ) throws Exception {
+        return decode( GraffleSource.open( file ).plist(), PListByteParser.Laziness.NONE, false );
+    }
+    
+    /**
+     * Parse a PLIST file keeping only the parts in the projection. Values 
+     * outside the projection are skipped by the lexer without being 
+     * decoded. The file is decoded as for {@link #parseEager(File)}.
+     * 
+     * @param file the file to parse
+     * @param projection the key paths to keep
+     * @return the object contained in the plist - usually a Map or List, or
+     *         null if the top level object is not kept
+     */
+    public static Object parse( File file, PListProjection projection ) throws Exception {
+        return parse( GraffleSource.open( file ), projection );
+    }
+    
+    /**
+     * Parse the plist of a document source keeping only the parts in the
+     * projection
+     * 
+     * @param source the document
+     * @param projection the key paths to keep
+     * @return the object contained in the plist - usually a Map or List, or
+     *         null if the top level object is not kept
+     */
+    public static Object parse( GraffleSource source, PListProjection projection ) throws Exception {
+        ByteBuffer bytes = source.plist();
+        if( BinaryPListParser.isBinary( bytes ) ) {
+            return BinaryPListParser.parse( bytes, projection );
+        }
+        
+        if( isGzip( bytes ) ) {
+            InputStream in = PListPullParser.open( new ByteBufferInputStream( bytes ) );
+            try {
+                if( BinaryPListParser.isBinary( in ) ) {
+                    return BinaryPListParser.parse( PListPullParser.readAll( in, bytes.limit() ), projection );
+                }
+                
+                return PListPullParser.parse( in, projection );
+            }
+            finally {
+                in.close();
+            }
+        }
         
-        PListParser plist = new PListParser();
+        if( PListByteParser.isUTF8( bytes ) ) {
+            return PListByteParser.parse( bytes, projection );
+        }
         
-        //detect compressed file
-        FileInputStream in = new FileInputStream( file );
-        byte[] sig = new byte[4];
-        in.read( sig );
-        in.close();
+        return PListPullParser.parse( new ByteBufferInputStream( bytes ), projection );
+    }
+    
+    /**
+     * Decode plist bytes. This is the one place that the format is 
+     * detected. Binary plists go to the {@link BinaryPListParser}, and 
+     * uncompressed UTF-8 is decoded in place by the byte level lexer. 
+     * Gzipped text is inflated and buffered for the lexer if laziness is 
+     * wanted, otherwise it is inflated as it is streamed to the 
+     * {@link PListPullParser}. Gzipped binary plists are buffered.
+     */
+    private static Object decode( ByteBuffer bytes, PListByteParser.Laziness laziness, boolean deferData ) throws Exception {
+        if( BinaryPListParser.isBinary( bytes ) ) {
+            return BinaryPListParser.parse( bytes );
+        }
         
-        if( Arrays.equals( sig, GZIP_SIG ) ) {
-            in = new FileInputStream( file );
+        if( isGzip( bytes ) ) {
+            InputStream in = PListPullParser.open( new ByteBufferInputStream( bytes ) );
             try {
-                GZIPInputStream gzin = new GZIPInputStream( in );
-                parser.parse( gzin, plist );
+                if( BinaryPListParser.isBinary( in ) ) {
+                    return BinaryPListParser.parse( PListPullParser.readAll( in, bytes.limit() ) );
+                }
+                
+                if( laziness == PListByteParser.Laziness.NONE ) {
+                    return PListPullParser.parse( in );
+                }
+                
+                return PListByteParser.parse( PListPullParser.readAll( in, bytes.limit() ), laziness, deferData );
             }
             finally {
                 in.close();
             }
-        }        
-        else {
-            parser.parse( file, plist );
         }
         
-        return plist.plistObject;
-    }    
+        if( PListByteParser.isUTF8( bytes ) ) {
+            return PListByteParser.parse( bytes, laziness, deferData );
+        }
+        
+        return PListPullParser.parse( new ByteBufferInputStream( bytes ) );
+    }
+    
+    private static boolean isGzip( ByteBuffer bytes ) {
+        byte[] sig = PListPullParser.GZIP_SIG;
+        if( bytes.limit() < sig.length ) return false;
+        
+        for( int i = 0; i < sig.length; i++ ) {
+            if( bytes.get( i ) != sig[i] ) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Parse a PLIST file lazily. Each entry of the top level "Sheets" array
+     * and each element of a "GraphicsList" is only decoded when it is first
+     * accessed. Until then the document bytes are retained.
+     * 
+     * Binary plists are always decoded in full.
+     * 
+     * @param file the file to parse
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parseLazy( File file ) throws Exception {
+        return parseLazy( file, false );
+    }
+    
+    /**
+     * Parse a PLIST file lazily, optionally leaving data values encoded. 
+     * Deferred data values are returned as {@link PListData} and are only 
+     * decoded when their bytes are asked for.
+     * 
+     * @param file the file to parse
+     * @param deferData whether to defer decoding data values
+     * @return the object contained in the plist - usually a Map or List
+     * @see #parseLazy(File)
+     */
+    public static Object parseLazy( File file, boolean deferData ) throws Exception {
+        return decode( GraffleSource.open( file ).plist(), PListByteParser.Laziness.DOCUMENT, deferData );
+    }
+    
+    /**
+     * Parse a PLIST file with the entries of the top level "Sheets" array
+     * decoded in parallel, using a shared pool with a thread per processor.
+     * 
+     * @param file the file to parse
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parseParallel( File file ) throws Exception {
+        return parseParallel( file, sharedExecutor() );
+    }
+    
+    /**
+     * Parse a PLIST file with the entries of the top level "Sheets" array
+     * decoded in parallel. A quick scan finds the sheet boundaries and then
+     * each sheet is decoded by a separate task.
+     * 
+     * Binary plists are decoded in full on the calling thread.
+     * 
+     * @param file the file to parse
+     * @param executor the executor for the sheet tasks
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parseParallel( File file, ExecutorService executor ) throws Exception {
+        return decodeSheets( decode( GraffleSource.open( file ).plist(), PListByteParser.Laziness.SHEETS, false ), executor );
+    }
+    
+    //decode the lazy sheets of a plist in parallel
+    @SuppressWarnings("unchecked")
+    private static Object decodeSheets( Object plist, ExecutorService executor ) throws Exception {
+        if( ! ( plist instanceof Map ) ) return plist;
+        
+        List<Object> sheets = (List<Object>) ((Map<String,Object>) plist).get( "Sheets" );
+        if( sheets == null ) return plist;
+        
+        List<Future<Map<String,Object>>> futures = new ArrayList<Future<Map<String,Object>>>();
+        for( Object sheet : sheets ) {
+            if( sheet instanceof LazyDict ) {
+                final LazyDict dict = (LazyDict) sheet;
+                futures.add( executor.submit( new Callable<Map<String,Object>>() {
+                    public Map<String,Object> call() {
+                        return dict.dict();
+                    }
+                }));
+            }
+            else futures.add( null );
+        }
+        
+        //replace the lazy sheets with the decoded ones
+        for( int i = 0; i < futures.size(); i++ ) {
+            Future<Map<String,Object>> future = futures.get( i );
+            if( future == null ) continue;
+            
+            try {
+                sheets.set( i, future.get() );
+            }
+            catch( ExecutionException ex ) {
+                Throwable cause = ex.getCause();
+                if( cause instanceof Exception ) throw (Exception) cause;
+                throw ex;
+            }
+        }
+        
+        return plist;
+    }
+    
+    //get the shared executor for parallel parsing
+    private static synchronized ExecutorService sharedExecutor() {
+        if( sharedExecutor == null ) {
+            sharedExecutor = newDaemonPool( "plist-parser" );
+        }
+        
+        return sharedExecutor;
+    }
+    
+    /**
+     * Make a fixed pool with a daemon thread per processor, so that an idle
+     * pool does not keep the VM alive
+     */
+    static ExecutorService newDaemonPool( final String name ) {
+        return Executors.newFixedThreadPool( 
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactory() {
+                public Thread newThread( Runnable r ) {
+                    Thread thread = new Thread( r, name );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            });
+    }
 }
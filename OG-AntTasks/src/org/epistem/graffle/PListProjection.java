@@ -0,0 +1,243 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set of key paths to keep when parsing a plist. Everything else is 
+ * skipped by the parser without being decoded.
+ * 
+ * A path is a list of segments separated by "/". A segment is a dict key, 
+ * "*" for any single key or array element, or "**" for any number of 
+ * levels (including none). Paths start at the top of the plist - for 
+ * example "Sheets/*&#47;GraphicsList/**&#47;Notes".
+ * 
+ * The whole subtree at the end of a matching path is kept. The dicts and
+ * arrays leading to it are kept with only the entries that lead to a 
+ * match, so they may be empty. Other values are dropped.
+ *
+ * @author nickmain
+ */
+public final class PListProjection {
+
+    private static final String ANY       = "*";
+    private static final String ANY_DEPTH = "**";
+    
+    private static final String[] SHEET_KEYS = { 
+        "SheetTitle", "UniqueID", "Notes", "UserInfo", "Layers", 
+        "BackgroundGraphic/Notes", "BackgroundGraphic/UserInfo" 
+    };
+    
+    private static final String[] GRAPHIC_KEYS = { 
+        "Class", "ID", "isSubgraph", "Layer", "Style/stroke", "Notes", 
+        "UserInfo", "Shape", "ImageID", "Bounds", "Points", "Head", "Tail", 
+        "Line", "Text" 
+    };
+
+    /**
+     * The parts of a document that are read by {@link OmniGraffleDoc} and 
+     * its sheets, layers and graphics
+     */
+    public static final PListProjection MODEL = of( modelPaths() );
+    
+    private final String[][] patterns;
+    
+    /** The node for the top of the plist */
+    final Node root;
+    
+    private PListProjection( String[][] patterns ) {
+        this.patterns = patterns;
+        
+        int[] states = new int[ patterns.length ];
+        for( int i = 0; i < patterns.length; i++ ) states[i] = state( i, 0 );
+        root = node( states, states.length );
+    }
+    
+    /**
+     * Make a projection that keeps the given paths
+     */
+    public static PListProjection of( String... paths ) {
+        String[][] patterns = new String[ paths.length ][];
+        
+        for( int i = 0; i < paths.length; i++ ) {
+            String[] segments = paths[i].split( "/", -1 );
+            if( segments.length > 0xffff ) throw new IllegalArgumentException( "path is too long: " + paths[i] );
+            
+            for( int j = 0; j < segments.length; j++ ) {
+                String segment = segments[j];
+                if( segment.length() == 0 ) throw new IllegalArgumentException( "empty segment in path: " + paths[i] );
+                
+                if     ( segment.equals( ANY ) )       segments[j] = ANY;
+                else if( segment.equals( ANY_DEPTH ) ) segments[j] = ANY_DEPTH;
+            }
+            
+            patterns[i] = segments;
+        }
+        
+        return new PListProjection( patterns );
+    }
+    
+    //the paths for the model - documents with a single sheet have the 
+    //sheet at the top level
+    private static String[] modelPaths() {
+        List<String> paths = new ArrayList<String>();
+        paths.addAll( Arrays.asList( "CreationDate", "Creator", "ModificationDate", "Modifier" ) );
+        
+        //the images embedded in a flat file
+        paths.addAll( Arrays.asList( "ImageList", "Images" ) );
+        
+        for( String sheet : new String[] { "", "Sheets/*/" } ) {
+            for( String key : SHEET_KEYS   ) paths.add( sheet + key );
+            for( String key : GRAPHIC_KEYS ) paths.add( sheet + "GraphicsList/**/" + key );
+        }
+        
+        return paths.toArray( new String[ paths.size() ] );
+    }
+    
+    //a state is a position within a pattern
+    private static int state( int pattern, int position ) {
+        return ( pattern << 16 ) | position;
+    }
+    
+    //make the node for the given states, following any "**" segments 
+    //that can match nothing
+    private Node node( int[] states, int count ) {
+        for( int i = 0; i < count; i++ ) {
+            int pattern  = states[i] >>> 16;
+            int position = states[i] & 0xffff;
+            
+            String[] segments = patterns[ pattern ];
+            if( position == segments.length ) return Node.ALL;
+            
+            if( segments[ position ] == ANY_DEPTH ) {
+                int next = state( pattern, position + 1 );
+                if( ! contains( states, count, next ) ) {
+                    if( count == states.length ) states = Arrays.copyOf( states, count * 2 );
+                    states[ count++ ] = next;
+                }
+            }
+        }
+        
+        if( count == 0 ) return null;
+        
+        int[] sorted = Arrays.copyOf( states, count );
+        Arrays.sort( sorted );
+        return new Node( this, sorted );
+    }
+    
+    //the node reached from the given states by a key, or by an array 
+    //element if the key is null
+    private Node step( int[] states, String key ) {
+        int[] next = new int[ states.length * 2 ];
+        int count = 0;
+        
+        for( int state : states ) {
+            int pattern  = state >>> 16;
+            int position = state & 0xffff;
+            String segment = patterns[ pattern ][ position ];
+            
+            int reached;
+            if     ( segment == ANY_DEPTH ) reached = state;
+            else if( segment == ANY )       reached = state + 1;
+            else if( key != null && segment.equals( key ) ) reached = state + 1;
+            else continue;
+            
+            if( ! contains( next, count, reached ) ) next[ count++ ] = reached;
+        }
+        
+        return node( next, count );
+    }
+    
+    private static boolean contains( int[] states, int count, int state ) {
+        for( int i = 0; i < count; i++ ) {
+            if( states[i] == state ) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * A position in the plist being parsed. The children of a node are null
+     * if they are not kept and ALL if their whole subtree is kept. Children
+     * are computed once and shared by all parses. 
+     */
+    static final class Node {
+        
+        /** Keep the whole subtree */
+        static final Node ALL = new Node( null, null );
+        
+        //marks a child that is not kept, since the map cannot hold null
+        private static final Node NONE = new Node( null, null );
+        
+        private final PListProjection projection;
+        private final int[] states;
+        private final Map<String,Node> children;
+        private volatile Node element;
+        
+        private Node( PListProjection projection, int[] states ) {
+            this.projection = projection;
+            this.states     = states;
+            this.children   = projection != null ? new ConcurrentHashMap<String,Node>() : null;
+        }
+        
+        /**
+         * Get the node for the value of a dict key
+         * @return null if the value is not kept
+         */
+        Node child( String key ) {
+            if( this == ALL ) return ALL;
+            
+            Node child = children.get( key );
+            if( child == null ) {
+                child = projection.step( states, key );
+                if( child == null ) child = NONE;
+                children.put( key, child );
+            }
+            
+            return child == NONE ? null : child;
+        }
+        
+        /**
+         * Get the node for the elements of an array
+         * @return null if the elements are not kept
+         */
+        Node element() {
+            if( this == ALL ) return ALL;
+            
+            Node child = element;
+            if( child == null ) {
+                child = projection.step( states, null );
+                if( child == null ) child = NONE;
+                element = child;
+            }
+            
+            return child == NONE ? null : child;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.epistem.graffle.PListProjection.Node;
+import org.epistem.io.ByteBufferInputStream;
+import org.epistem.io.PipelinedGZIPInputStream;
+import org.epistem.util.Base64;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * A pull (StAX) based parser for OS X xml-encoded PLISTs. Produces the same
+ * object graph as {@link PListParser}.
+ * 
+ * An instance keeps its buffers between documents so it should be reused 
+ * for batches of files. Instances are not thread-safe.
+ *
+ * @author nickmain
+ */
+public class PListPullParser {
+
+    //element kinds
+    static final int OTHER   = 0;
+    static final int ARRAY   = 1;
+    static final int DICT    = 2;
+    static final int KEY     = 3;
+    static final int STRING  = 4;
+    static final int INTEGER = 5;
+    static final int REAL    = 6;
+    static final int TRUE    = 7;
+    static final int FALSE   = 8;
+    static final int DATA    = 9;
+    static final int DATE    = 10;
+
+    static final String DATE_FORMAT = "yyyy'-'MM'-'dd'T'HH':'mm':'ss'Z'";
+    
+    static final byte[] GZIP_SIG = { 0x1f, (byte) 0x8b, 0x08, 0x00 };
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private static final ThreadLocal<PListPullParser> threadParser = new ThreadLocal<PListPullParser>() {
+        @Override protected PListPullParser initialValue() {
+            return new PListPullParser();
+        }
+    };
+    
+    private final XMLInputFactory factory;
+    private final StringBuilder text = new StringBuilder();
+    private final SimpleDateFormat dateFormat = dateFormat();
+    
+    //data elements are decoded as their text arrives
+    private final Base64.Decoder decoder = new Base64.Decoder();
+    private boolean inData;
+    
+    //the string pool for the current parse
+    private StringPool pool;
+    
+    //the container stack - each frame is a dict or an array, dicts have
+    //the pending key in the parallel keys array and their entries on the
+    //builder stack above the mark
+    private Object[]  containers = new Object[ 16 ];
+    private boolean[] isDict     = new boolean[ 16 ];
+    private String[]  keys       = new String[ 16 ];
+    private int[]     marks      = new int[ 16 ];
+    private Node[]    nodes      = new Node[ 16 ];
+    private int depth;
+    private final CompactDict.Builder entries = new CompactDict.Builder();
+    
+    public PListPullParser() {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_VALIDATING, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+    }
+    
+    /**
+     * Make a formatter for plist dates. The trailing Z means the dates are
+     * in UTC, as they are in binary plists.
+     */
+    static SimpleDateFormat dateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat( DATE_FORMAT );
+        format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        return format;
+    }
+    
+    /**
+     * Parse a PLIST file using the parser for the current thread.
+     * 
+     * @param file the file to parse - may be a package directory, a binary
+     *             plist or a gzipped file
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public static Object parse( File file ) throws Exception {
+        return threadParser.get().read( file );
+    }
+    
+    /**
+     * Buffer a PLIST stream, detecting compressed files. Compressed files 
+     * are inflated on a separate thread when there is more than one 
+     * processor. The returned stream supports mark, so the inflated bytes
+     * can be checked for the binary plist magic.
+     */
+    static InputStream open( InputStream in ) throws IOException {
+        in = new BufferedInputStream( in, BUFFER_SIZE );
+        
+        //detect compressed file
+        byte[] sig = new byte[ GZIP_SIG.length ];
+        in.mark( sig.length );
+        int count = 0;
+        while( count < sig.length ) {
+            int n = in.read( sig, count, sig.length - count );
+            if( n < 0 ) break;
+            count += n;
+        }
+        in.reset();
+        
+        if( Arrays.equals( sig, GZIP_SIG ) ) {
+            if( Runtime.getRuntime().availableProcessors() > 1 ) {
+                in = new BufferedInputStream( new PipelinedGZIPInputStream( in ) );
+            }
+            else {
+                in = new BufferedInputStream( new GZIPInputStream( in, BUFFER_SIZE ) );
+            }
+        }
+        
+        return in;
+    }
+    
+    /**
+     * Read the rest of an inflating stream into a buffer
+     * 
+     * @param compressedSize the size of the compressed bytes
+     */
+    static ByteBuffer readAll( InputStream in, int compressedSize ) throws IOException {
+        Bytes bytes = new Bytes( (int) Math.min( compressedSize * 4L, Integer.MAX_VALUE - 8 ) );
+        byte[] buffer = new byte[ BUFFER_SIZE ];
+        int count;
+        while( ( count = in.read( buffer ) ) >= 0 ) {
+            bytes.write( buffer, 0, count );
+        }
+        
+        return bytes.buffer();
+    }
+    
+    /**
+     * Bytes that can be wrapped as a buffer without copying them again
+     */
+    private static final class Bytes extends ByteArrayOutputStream {
+        Bytes( int size ) {
+            super( size );
+        }
+        
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap( buf, 0, count );
+        }
+    }
+    
+    /**
+     * Parse a PLIST file. The file is only opened once.
+     * 
+     * @param file the file to parse - may be a package directory, a binary
+     *             plist or a gzipped file
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public Object read( File file ) throws Exception {
+        ByteBuffer bytes = GraffleSource.open( file ).plist();
+        if( BinaryPListParser.isBinary( bytes ) ) {
+            return BinaryPListParser.parse( bytes );
+        }
+        
+        InputStream in = open( new ByteBufferInputStream( bytes ) );
+        if( BinaryPListParser.isBinary( in ) ) {
+            //a gzipped binary plist
+            try {
+                return BinaryPListParser.parse( readAll( in, bytes.limit() ) );
+            }
+            finally {
+                in.close();
+            }
+        }
+        
+        return readAndClose( in );
+    }
+    
+    /**
+     * Parse a possibly compressed PLIST stream using the parser for the 
+     * current thread. The stream is closed.
+     * 
+     * @return the object contained in the plist - usually a Map or List
+     */
+    static Object parse( InputStream in ) throws Exception {
+        try {
+            return threadParser.get().readAndClose( open( in ) );
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Parse a possibly compressed PLIST stream using the parser for the 
+     * current thread, keeping only the parts in the projection. The stream
+     * is closed.
+     */
+    static Object parse( InputStream in, PListProjection projection ) throws Exception {
+        try {
+            return threadParser.get().readAndClose( open( in ), projection.root );
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    private Object readAndClose( InputStream in ) throws Exception {
+        return readAndClose( in, null );
+    }
+    
+    private Object readAndClose( InputStream in, Node root ) throws Exception {
+        try {
+            return read( in, root );
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Parse a PLIST from a stream. The stream is not closed.
+     * 
+     * @return the object contained in the plist - usually a Map or List
+     */
+    public Object read( InputStream in ) throws Exception {
+        return read( in, null );
+    }
+    
+    //parse a stream, keeping only the parts under the root node if there 
+    //is one
+    private Object read( InputStream in, Node root ) throws Exception {
+        XMLStreamReader reader = factory.createXMLStreamReader( in );
+        try {
+            return read( reader, root );
+        }
+        finally {
+            reader.close();
+            
+            //drop references to the parsed graph
+            while( depth > 0 ) pop();
+            
+            //do not hang on to a huge buffer from a large blob
+            if( text.capacity() > BUFFER_SIZE ) {
+                text.setLength( 0 );
+                text.trimToSize();
+            }
+        }
+    }
+    
+    private Object read( XMLStreamReader reader, Node root ) throws XMLStreamException {
+        Object value = null;
+        depth = 0;
+        entries.clear( 0 );
+        decoder.reset();
+        inData = false;
+        pool   = PListParser.stringPool();
+        
+        while( reader.hasNext() ) {
+            switch( reader.next() ) {
+                case START_ELEMENT: {
+                    text.setLength( 0 );
+                    
+                    int kind = kindOf( reader.getLocalName() );
+                    Node node = null;
+                    if( root != null && kind != KEY && kind != OTHER ) {
+                        node = nodeFor( root );
+                        
+                        //leaves are only kept if their whole subtree is
+                        if( node == null || ( node != Node.ALL && kind != ARRAY && kind != DICT ) ) {
+                            skipElement( reader );
+                            if( depth > 0 ) keys[ depth - 1 ] = null;
+                            break;
+                        }
+                    }
+                    
+                    switch( kind ) {
+                        case ARRAY: push( new ArrayList<Object>(), false, node ); break;
+                        case DICT:  push( null, true, node ); break;
+                        case DATA:  inData = true; break;
+                        default: break;
+                    }
+                    break;
+                }
+                    
+                case CHARACTERS:
+                case CDATA:
+                case SPACE: {
+                    if( inData ) decodeData( reader );
+                    else text.append( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+                    break;
+                }
+                
+                case END_ELEMENT: {
+                    switch( kindOf( reader.getLocalName() ) ) {
+                        case ARRAY:   
+                        case DICT:    value = pop(); break;
+                        case STRING:  value = PListParser.string( text, pool ); break;
+                        case INTEGER: value = addInt( parseInt( text ) ); continue;
+                        case REAL:    value = addReal( Double.parseDouble( trimmedText() ) ); continue;
+                        case TRUE:    value = Boolean.TRUE;  break;
+                        case FALSE:   value = Boolean.FALSE; break;
+                        case DATA:    value = parseData(); break;
+                        case DATE:    value = parseDate(); break;
+                        
+                        case KEY: {
+                            if( depth > 0 ) keys[ depth - 1 ] = KeyTable.SHARED.internTrimmed( text );
+                            continue;
+                        }
+                        
+                        default: continue;
+                    }
+                    
+                    add( value );
+                    break;
+                }
+                
+                default: break;
+            }
+        }
+        
+        return value;
+    }
+    
+    //map an element name to its kind
+    private static int kindOf( String name ) {
+        if( name.length() == 0 ) return OTHER;
+        
+        switch( name.charAt( 0 ) ) {
+            case 'a': return name.equals( "array" )   ? ARRAY   : OTHER;
+            case 'k': return name.equals( "key" )     ? KEY     : OTHER;
+            case 's': return name.equals( "string" )  ? STRING  : OTHER;
+            case 'i': return name.equals( "integer" ) ? INTEGER : OTHER;
+            case 'r': return name.equals( "real" )    ? REAL    : OTHER;
+            case 't': return name.equals( "true" )    ? TRUE    : OTHER;
+            case 'f': return name.equals( "false" )   ? FALSE   : OTHER;
+            case 'd': 
+                if( name.equals( "dict" ) ) return DICT;
+                if( name.equals( "data" ) ) return DATA;
+                if( name.equals( "date" ) ) return DATE;
+                return OTHER;
+                
+            default: return OTHER;
+        }
+    }
+    
+    //the projection node for a value in the current container
+    private Node nodeFor( Node root ) {
+        if( depth == 0 ) return root;
+        
+        int top = depth - 1;
+        if( ! isDict[ top ] ) return nodes[ top ].element();
+        
+        String key = keys[ top ];
+        return key != null ? nodes[ top ].child( key ) : null;
+    }
+    
+    //skip the rest of the current element
+    private static void skipElement( XMLStreamReader reader ) throws XMLStreamException {
+        int level = 1;
+        while( level > 0 ) {
+            switch( reader.next() ) {
+                case START_ELEMENT: level++; break;
+                case END_ELEMENT:   level--; break;
+                default: break;
+            }
+        }
+    }
+    
+    //push a new container onto the stack
+    private void push( Object container, boolean dict, Node node ) {
+        if( depth == containers.length ) {
+            int size = depth * 2;
+            containers = Arrays.copyOf( containers, size );
+            isDict     = Arrays.copyOf( isDict, size );
+            keys       = Arrays.copyOf( keys, size );
+            marks      = Arrays.copyOf( marks, size );
+            nodes      = Arrays.copyOf( nodes, size );
+        }
+        
+        containers[ depth ] = container;
+        isDict    [ depth ] = dict;
+        keys      [ depth ] = null;
+        marks     [ depth ] = dict ? entries.start() : 0;
+        nodes     [ depth ] = node;
+        depth++;
+    }
+    
+    //pop the current container
+    private Object pop() {
+        depth--;
+        Object container = isDict[ depth ] ? entries.build( marks[ depth ] ) : containers[ depth ];
+        containers[ depth ] = null;
+        keys      [ depth ] = null;
+        nodes     [ depth ] = null;
+        return container;
+    }
+
+    //add a value to the current container
+    @SuppressWarnings("unchecked")
+    private void add( Object value ) {
+        if( depth == 0 ) return;
+        
+        int top = depth - 1;
+        if( isDict[ top ] ) {
+            String key = keys[ top ];
+            if( key != null ) {
+                entries.put( key, value, marks[ top ] );
+                keys[ top ] = null;
+            }
+        }
+        else {
+            ((List<Object>) containers[ top ]).add( value );
+        }
+    }
+    
+    //add an integer to the current container - unboxed if it is a dict
+    private Object addInt( int number ) {
+        if( depth > 0 && isDict[ depth - 1 ] ) {
+            int top = depth - 1;
+            if( keys[ top ] != null ) {
+                entries.putInt( keys[ top ], number, marks[ top ] );
+                keys[ top ] = null;
+            }
+            return null;
+        }
+        
+        Object value = CompactDict.box( number );
+        add( value );
+        return value;
+    }
+    
+    //add a real to the current container - unboxed if it is a dict
+    private Object addReal( double number ) {
+        if( depth > 0 && isDict[ depth - 1 ] ) {
+            int top = depth - 1;
+            if( keys[ top ] != null ) {
+                entries.putReal( keys[ top ], number, marks[ top ] );
+                keys[ top ] = null;
+            }
+            return null;
+        }
+        
+        Object value = Double.valueOf( number );
+        add( value );
+        return value;
+    }
+    
+    //the text with leading and trailing whitespace removed
+    private String trimmedText() {
+        return trimmed( text );
+    }
+    
+    /**
+     * Get the text with leading and trailing whitespace removed
+     */
+    static String trimmed( CharSequence text ) {
+        int start = 0;
+        int end   = text.length();
+        while( start < end && text.charAt( start ) <= ' ' ) start++;
+        while( end > start && text.charAt( end - 1 ) <= ' ' ) end--;
+        return text.subSequence( start, end ).toString();
+    }
+    
+    /**
+     * Parse an integer from the trimmed text without creating a string 
+     */
+    static int parseInt( CharSequence text ) {
+        int start = 0;
+        int end   = text.length();
+        while( start < end && text.charAt( start ) <= ' ' ) start++;
+        while( end > start && text.charAt( end - 1 ) <= ' ' ) end--;
+
+        boolean negative = false;
+        int i = start;
+        if( i < end && ( text.charAt( i ) == '-' || text.charAt( i ) == '+' ) ) {
+            negative = text.charAt( i ) == '-';
+            i++;
+        }
+        
+        //fall back to the library for anything unusual or too long to be safe
+        if( i == end || end - i > 9 ) return Integer.parseInt( text.subSequence( start, end ).toString() );
+        
+        int value = 0;
+        for( ; i < end; i++ ) {
+            char c = text.charAt( i );
+            if( c < '0' || c > '9' ) return Integer.parseInt( text.subSequence( start, end ).toString() );
+            value = value * 10 + ( c - '0' );
+        }
+        
+        return negative ? -value : value;
+    }
+    
+    //decode the current characters of a data element
+    private void decodeData( XMLStreamReader reader ) throws XMLStreamException {
+        try{
+            decoder.decode( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+        } catch( IOException ex ) {
+            throw new XMLStreamException( "invalid base64 value" );
+        }
+    }
+    
+    private byte[] parseData() throws XMLStreamException {
+        inData = false;
+        try{
+            return decoder.toByteArray();
+        } catch( IOException ex ) {
+            throw new XMLStreamException( "invalid base64 value" );
+        }
+    }
+    
+    private Date parseDate() throws XMLStreamException {
+        try {
+            return dateFormat.parse( trimmedText() );
+        } catch( ParseException ex ) {
+            throw new XMLStreamException( ex );
+        }
+    }
+}
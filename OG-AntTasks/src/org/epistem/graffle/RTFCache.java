@@ -0,0 +1,224 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of decoded RTF, keyed by the RTF content. Many graphics 
+ * carry the same RTF - repeated labels, stencil text and empty notes - so 
+ * each distinct string only needs to be decoded once. Both the plain text
+ * and the {@link StyledText} of an entry are cached, each decoded when it
+ * is first asked for. A cache can be shared by any number of threads and 
+ * documents.
+ * 
+ * The cache is split into segments, each locked separately and holding 
+ * its entries in least-recently-used order. The size of an entry is the 
+ * length of the RTF plus the length of each decoded text, and a segment 
+ * evicts its oldest entries when it goes over its share of the capacity.
+ *
+ * @author nickmain
+ */
+public final class RTFCache {
+
+    /** Default capacity, in chars */
+    public static final long DEFAULT_CAPACITY = 4L * 1024 * 1024;
+    
+    private static final int SEGMENTS = 16;
+    
+    private static final RTFCache shared = new RTFCache( DEFAULT_CAPACITY );
+    
+    private final Segment[] segments = new Segment[ SEGMENTS ];
+    private final AtomicLong hits   = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * @param capacity the total size of the entries to hold, in chars
+     */
+    public RTFCache( long capacity ) {
+        if( capacity < 1 ) throw new IllegalArgumentException( "cache capacity must be positive" );
+        
+        long segmentCapacity = Math.max( 1, capacity / SEGMENTS );
+        for( int i = 0; i < SEGMENTS; i++ ) segments[i] = new Segment( segmentCapacity );
+    }
+    
+    /**
+     * The cache used by the graphics and sheets of all documents
+     */
+    public static RTFCache shared() {
+        return shared;
+    }
+    
+    /**
+     * Get the text of some RTF, decoding it if it is not cached
+     * 
+     * @return null if the RTF is null
+     * @throws IllegalArgumentException if the RTF groups are unbalanced
+     */
+    public String text( String rtf ) {
+        if( rtf == null ) return null;
+        
+        Segment segment = segment( rtf );
+        String text = (String) segment.get( rtf, false );
+        if( text != null ) {
+            hits.incrementAndGet();
+            return text;
+        }
+        
+        //decode outside the lock - two threads may decode the same string
+        misses.incrementAndGet();
+        text = RTFText.toText( rtf );
+        segment.put( rtf, text, false, text.length() );
+        return text;
+    }
+    
+    /**
+     * Get the styled text of some RTF, parsing it if it is not cached. 
+     * The styled text is immutable and is shared by every caller with 
+     * the same RTF.
+     * 
+     * @return null if the RTF is null
+     * @throws IllegalArgumentException if the RTF groups are unbalanced
+     */
+    public StyledText styledText( String rtf ) {
+        if( rtf == null ) return null;
+        
+        Segment segment = segment( rtf );
+        StyledText styled = (StyledText) segment.get( rtf, true );
+        if( styled != null ) {
+            hits.incrementAndGet();
+            return styled;
+        }
+        
+        misses.incrementAndGet();
+        styled = StyledText.fromRTF( rtf );
+        segment.put( rtf, styled, true, styled.text().length() );
+        return styled;
+    }
+    
+    private Segment segment( String rtf ) {
+        int hash = rtf.hashCode();
+        return segments[ ( hash ^ ( hash >>> 16 ) ) & ( SEGMENTS - 1 ) ];
+    }
+    
+    /**
+     * The number of lookups that found cached text
+     */
+    public long hits() {
+        return hits.get();
+    }
+    
+    /**
+     * The number of lookups that decoded the RTF
+     */
+    public long misses() {
+        return misses.get();
+    }
+    
+    /**
+     * The number of cached entries
+     */
+    public int size() {
+        int size = 0;
+        for( Segment segment : segments ) size += segment.count();
+        return size;
+    }
+    
+    /**
+     * Drop all the entries. The hit and miss counts are kept.
+     */
+    public void clear() {
+        for( Segment segment : segments ) segment.clear();
+    }
+    
+    /**
+     * The decoded forms of one RTF string, each null until it is decoded
+     */
+    private static final class Entry {
+        String text;
+        StyledText styled;
+        int size;
+    }
+    
+    /**
+     * One lock's worth of entries, in access order
+     */
+    private static final class Segment {
+        private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>( 16, 0.75f, true );
+        private final long capacity;
+        private long size;
+        
+        Segment( long capacity ) {
+            this.capacity = capacity;
+        }
+        
+        synchronized Object get( String rtf, boolean styled ) {
+            Entry entry = entries.get( rtf );
+            if( entry == null ) return null;
+            return styled ? entry.styled : entry.text;
+        }
+        
+        /**
+         * @param length the length of the decoded text
+         */
+        synchronized void put( String rtf, Object decoded, boolean styled, int length ) {
+            Entry entry = entries.get( rtf );
+            if( entry == null ) {
+                entry = new Entry();
+                entry.size = rtf.length();
+                entries.put( rtf, entry );
+                size += entry.size;
+            }
+            
+            if( ( styled ? entry.styled : entry.text ) == null ) {
+                if( styled ) entry.styled = (StyledText) decoded;
+                else         entry.text   = (String) decoded;
+                entry.size += length;
+                size       += length;
+            }
+            
+            //evict the least recently used, but always keep the new entry
+            Iterator<Entry> it = entries.values().iterator();
+            while( size > capacity && entries.size() > 1 ) {
+                size -= it.next().size;
+                it.remove();
+            }
+        }
+        
+        synchronized int count() {
+            return entries.size();
+        }
+        
+        synchronized void clear() {
+            entries.clear();
+            size = 0;
+        }
+    }
+}
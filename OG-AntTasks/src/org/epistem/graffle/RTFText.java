@@ -0,0 +1,745 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.awt.Color;
+import java.util.*;
+
+/**
+ * Extracts the plain text from RTF without going through the Swing text
+ * package. The result is the same as reading the RTF into a 
+ * DefaultStyledDocument with the RTFEditorKit and taking the document text:
+ * groups, destinations, unicode and hex escapes, paragraph ends and the 
+ * keywords that stand for characters are all treated the same way, and 
+ * anything else is dropped.
+ * 
+ * The same pass can also track the character attributes, giving the text
+ * as {@link StyledText}.
+ *
+ * @author nickmain
+ */
+final class RTFText {
+
+    //keywords that stand for a character
+    private static final Map<String,Character> CHARACTERS = new HashMap<String,Character>();
+    static {
+        CHARACTERS.put( "\\",        '\\' );
+        CHARACTERS.put( "{",         '{' );
+        CHARACTERS.put( "}",         '}' );
+        CHARACTERS.put( " ",         '\u00A0' );
+        CHARACTERS.put( "~",         '\u00A0' );
+        CHARACTERS.put( "_",         '\u2011' );
+        CHARACTERS.put( "-",         '\u2027' );
+        CHARACTERS.put( "bullet",    '\u2022' );
+        CHARACTERS.put( "emdash",    '\u2014' );
+        CHARACTERS.put( "emspace",   '\u2003' );
+        CHARACTERS.put( "endash",    '\u2013' );
+        CHARACTERS.put( "enspace",   '\u2002' );
+        CHARACTERS.put( "ldblquote", '\u201C' );
+        CHARACTERS.put( "lquote",    '\u2018' );
+        CHARACTERS.put( "ltrmark",   '\u200E' );
+        CHARACTERS.put( "rdblquote", '\u201D' );
+        CHARACTERS.put( "rquote",    '\u2019' );
+        CHARACTERS.put( "rtlmark",   '\u200F' );
+        CHARACTERS.put( "tab",       '\t' );
+        CHARACTERS.put( "zwj",       '\u200D' );
+        CHARACTERS.put( "zwnj",      '\u200C' );
+    }
+    
+    //destinations that are discarded - the font and color tables are 
+    //handled separately
+    private static final Set<String> DESTINATIONS = words( 
+        "stylesheet info" );
+    
+    //destinations that are dropped even without a preceding \*
+    private static final Set<String> IGNORED_DESTINATIONS = words( 
+        "aftncn aftnsep aftnsepc annotation atnauthor atnicn atnid atnref " +
+        "atntime atrfend atrfstart bkmkend bkmkstart datafield do dptxbxtext " +
+        "falt field file filetbl fname fontemb fontfile footer footerf footerl " +
+        "footerr footnote ftncn ftnsep ftnsepc header headerf headerl headerr " +
+        "keycode nextfile object pict pn pnseclvl pntxtb pntxta revtbl rxe tc " +
+        "template txe xe" );
+    
+    //formatting keywords that are understood within the document, so that
+    //a group marked with \* is not dropped
+    private static final Set<String> FORMATTING = words( 
+        "i b ul ulnone li ri fi ql qr qc qj sa sb tqr tqc tqdec tldot tlhyph " +
+        "tlul tlth tleq caps outl scaps shad v strike deleted saveformat " +
+        "defformat landscape paperw paperh margl margr margt margb gutter " +
+        "nowidctlpar widctlpar widowctrl plain pard sectd sect" );
+    
+    //formatting keywords with a parameter
+    private static final Set<String> FORMATTING_PARAMETERS = words( 
+        "i b ul li ri fi sa sb caps outl scaps shad v strike deleted paperw " +
+        "paperh margl margr margt margb gutter f fc cf cb fs sl tx tb s cs ds" );
+    
+    //character sets for \' escapes
+    private static final char[] LATIN1 = charset( null );
+
+    //the ansi table used by the Swing reader
+    private static final char[] ANSI = charset(
+            "\u0402\u0403\u201A\u0192\u201E\u2026\u2020\u2021\u02C6\u2030\u0160\u2039\u015A\u0164\u017D\u0179" +
+            "\u0452\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u2122\u0161\u203A\u015B\u0165\u017E\u017A" +
+            "\u0000\u00A1\u00A2\u00A3\u00A4\u00A5\u00A6\u00A7\u00A8\u00A9\u00AA\u00AB\u00AC\u00AD\u00AE\u00AF" +
+            "\u00B0\u00B1\u00B2\u00B3\u00B4\u00B5\u00B6\u00B7\u00B8\u00B9\u00BA\u00BB\u00BC\u00BD\u00BE\u00BF" +
+            "\u00C0\u00C1\u00C2\u00C3\u00C4\u00C5\u00C6\u00C7\u00C8\u00C9\u00CA\u00CB\u00CC\u00CD\u00CE\u00CF" +
+            "\u00D0\u00D1\u00D2\u00D3\u00D4\u00D5\u00D6\u00D7\u00D8\u00D9\u00DA\u00DB\u00DC\u00DD\u00DE\u00DF" +
+            "\u00E0\u00E1\u00E2\u00E3\u00E4\u00E5\u00E6\u00E7\u00E8\u00E9\u00EA\u00EB\u00EC\u00ED\u00EE\u00EF" +
+            "\u00F0\u00F1\u00F2\u00F3\u00F4\u00F5\u00F6\u00F7\u00F8\u00F9\u00FA\u00FB\u00FC\u00FD\u00FE\u00FF" );
+
+    //Mac Roman
+    private static final char[] MAC = charset(
+            "\u00C4\u00C5\u00C7\u00C9\u00D1\u00D6\u00DC\u00E1\u00E0\u00E2\u00E4\u00E3\u00E5\u00E7\u00E9\u00E8" +
+            "\u00EA\u00EB\u00ED\u00EC\u00EE\u00EF\u00F1\u00F3\u00F2\u00F4\u00F6\u00F5\u00FA\u00F9\u00FB\u00FC" +
+            "\u2020\u00B0\u00A2\u00A3\u00A7\u2022\u00B6\u00DF\u00AE\u00A9\u2122\u00B4\u00A8\u2260\u00C6\u00D8" +
+            "\u221E\u00B1\u2264\u2265\u00A5\u00B5\u2202\u2211\u220F\u03C0\u222B\u00AA\u00BA\u2126\u00E6\u00F8" +
+            "\u00BF\u00A1\u00AC\u221A\u0192\u2248\u2206\u00AB\u00BB\u2026\u00A0\u00C0\u00C3\u00D5\u0152\u0153" +
+            "\u2013\u2014\u201C\u201D\u2018\u2019\u00F7\u25CA\u00FF\u0178\u2044\u00A4\u2039\u203A\uFB01\uFB02" +
+            "\u2021\u00B7\u201A\u201E\u2030\u00C2\u00CA\u00C1\u00CB\u00C8\u00CD\u00CE\u00CF\u00CC\u00D3\u00D4" +
+            "\u0000\u00D2\u00DA\u00DB\u00D9\u0131\u02C6\u02DC\u00AF\u02D8\u02D9\u02DA\u00B8\u02DD\u02DB\u02C7" );
+
+    //NeXTSTEP - also drops the RTF special characters
+    private static final char[] NEXT = charset(
+            "\u00A0\u00C0\u00C1\u00C2\u00C3\u00C4\u00C5\u00C7\u00C8\u00C9\u00CA\u00CB\u00CC\u00CD\u00CE\u00CF" +
+            "\u00D0\u00D1\u00D2\u00D3\u00D4\u00D5\u00D6\u00D9\u00DA\u00DB\u00DC\u00DD\u00DE\u00B5\u00D7\u00F7" +
+            "\u00A9\u00A1\u00A2\u00A3\u2044\u00A5\u0192\u00A7\u00A4\u2019\u201C\u00AB\u2039\u203A\uFB01\uFB02" +
+            "\u00AE\u2013\u2020\u2021\u00B7\u00A6\u00B6\u2022\u201A\u201E\u201D\u00BB\u2026\u2030\u00AC\u00BF" +
+            "\u00B9\u02CB\u00B4\u02C6\u02DC\u00AF\u02D8\u02D9\u00A8\u00B2\u02DA\u00B8\u00B3\u02DD\u02DB\u02C7" +
+            "\u2014\u00B1\u00BC\u00BD\u00BE\u00E0\u00E1\u00E2\u00E3\u00E4\u00E5\u00E7\u00E8\u00E9\u00EA\u00EB" +
+            "\u00EC\u00C6\u00ED\u00AA\u00EE\u00EF\u00F0\u00F1\u0141\u00D8\u0152\u00BA\u00F2\u00F3\u00F4\u00F5" +
+            "\u00F6\u00E6\u00F9\u00FA\u00FB\u0131\u00FC\u00FD\u0142\u00F8\u0153\u00DF\u00FE\u00FF\u0000\u0000" );
+    static {
+        NEXT[ '\n' ] = NEXT[ '\r' ] = NEXT[ '\\' ] = NEXT[ '{' ] = NEXT[ '}' ] = 0;
+    }
+    
+    //IBM code page 437
+    private static final char[] CP437 = charset(
+            "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5" +
+            "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00A2\u00A3\u00A5\u20A7\u0192" +
+            "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u2310\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB" +
+            "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255D\u255C\u255B\u2510" +
+            "\u2514\u2534\u252C\u251C\u2500\u253C\u255E\u255F\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u2567" +
+            "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256B\u256A\u2518\u250C\u2588\u2584\u258C\u2590\u2580" +
+            "\u03B1\u00DF\u0393\u03C0\u03A3\u03C3\u00B5\u03C4\u03A6\u0398\u03A9\u03B4\u221E\u03C6\u03B5\u2229" +
+            "\u2261\u00B1\u2265\u2264\u2320\u2321\u00F7\u2248\u00B0\u2219\u00B7\u221A\u207F\u00B2\u25A0\u00A0" );
+
+    //IBM code page 850
+    private static final char[] CP850 = charset(
+            "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5" +
+            "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00F8\u00A3\u00D8\u00D7\u0192" +
+            "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u00AE\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB" +
+            "\u2591\u2592\u2593\u2502\u2524\u00C1\u00C2\u00C0\u00A9\u2563\u2551\u2557\u255D\u00A2\u00A5\u2510" +
+            "\u2514\u2534\u252C\u251C\u2500\u253C\u00E3\u00C3\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u00A4" +
+            "\u00F0\u00D0\u00CA\u00CB\u00C8\u0131\u00CD\u00CE\u00CF\u2518\u250C\u2588\u2584\u00A6\u00CC\u2580" +
+            "\u00D3\u00DF\u00D4\u00D2\u00F5\u00D5\u00B5\u00FE\u00DE\u00DA\u00DB\u00D9\u00FD\u00DD\u00AF\u00B4" +
+            "\u00AD\u00B1\u2017\u00BE\u00B6\u00A7\u00F7\u00B8\u00B0\u00A8\u00B7\u00B9\u00B3\u00B2\u25A0\u00A0" );
+    
+    //kinds of destination
+    private static final int DOCUMENT = 0;
+    private static final int FONTS    = 1;
+    private static final int COLORS   = 2;
+    private static final int DISCARDS = 3;
+    
+    /**
+     * Where text and keywords go. Only the document keeps its text, the font
+     * and color tables are read when styles are wanted and everything else
+     * is discarded.
+     */
+    private static final class Destination {
+        final int kind;
+        boolean inParagraph;
+        
+        //the font table entry being read
+        int fontNumber = -1;
+        StringBuilder fontName;
+        
+        //the color being read and the colors so far
+        int red, green, blue;
+        List<Color> colors;
+        
+        Destination( int kind ) {
+            this.kind = kind;
+            if( kind == COLORS ) colors = new ArrayList<Color>();
+        }
+    }
+    
+    private static final Destination DISCARD = new Destination( DISCARDS );
+    
+    //character attribute flags
+    private static final int BOLD      = 1;
+    private static final int ITALIC    = 2;
+    private static final int UNDERLINE = 4;
+    
+    private final String rtf;
+    private final StringBuilder text;
+    private int pos;
+    
+    private Destination destination;
+    private int unicodeSkip = 1;
+    private int skipping;
+    private boolean ignoreIfUnknown;
+    private char[] charset = LATIN1;
+    
+    //the destination and unicode skip count saved at the start of each group
+    private Destination[] savedDestinations = new Destination[ 8 ];
+    private int[] savedSkips = new int[ 8 ];
+    private int level;
+    
+    //whether to track styles
+    private final boolean styled;
+    private Map<Integer,String> fonts;
+    private Color[] colors;
+    
+    //the character attributes - font and color are table indices, -1 if 
+    //not set, and size is in points, zero if not set
+    private int font  = -1;
+    private int size;
+    private int color = -1;
+    private int flags;
+    private int[] savedAttributes;
+    
+    //the style of the attributes, null if they have changed
+    private TextStyle style;
+    
+    private int[] runStarts;
+    private TextStyle[] runStyles;
+    private int runCount;
+    
+    private RTFText( String rtf, boolean styled ) {
+        this.rtf    = rtf;
+        this.text   = new StringBuilder( rtf.length() / 2 );
+        this.styled = styled;
+        
+        if( styled ) {
+            savedAttributes = new int[ savedSkips.length * 4 ];
+            runStarts       = new int[ 4 ];
+            runStyles       = new TextStyle[ 4 ];
+        }
+    }
+    
+    /**
+     * Extract the text from RTF
+     * 
+     * @throws IllegalArgumentException if a group is closed that was not 
+     *                                  opened
+     */
+    static String toText( String rtf ) {
+        RTFText reader = new RTFText( rtf, false );
+        reader.read();
+        return reader.text.toString();
+    }
+    
+    /**
+     * Extract the text from RTF along with the font, size, bold, italic,
+     * underline and color of each run. The text is the same as 
+     * {@link #toText(String)}.
+     * 
+     * @throws IllegalArgumentException if a group is closed that was not 
+     *                                  opened
+     */
+    static StyledText toStyledText( String rtf ) {
+        RTFText reader = new RTFText( rtf, true );
+        reader.read();
+        return new StyledText( reader.text.toString(), 
+                               Arrays.copyOf( reader.runStarts, reader.runCount ), 
+                               Arrays.copyOf( reader.runStyles, reader.runCount ) );
+    }
+    
+    private void read() {
+        String rtf = this.rtf;
+        int length = rtf.length();
+        
+        while( pos < length ) {
+            char c = rtf.charAt( pos++ );
+            switch( c ) {
+                case '\n':
+                case '\r': break;  //unescaped line ends are ignored
+                case '{':  beginGroup(); break;
+                case '}':  endGroup(); break;
+                case '\\': control(); break;
+                default:   text( c ); break;
+            }
+        }
+        
+        //close any groups left open
+        while( level > 0 ) closeGroup();
+    }
+    //read a control word or symbol - if the input ends part way through
+    //then it is ignored
+    private void control() {
+        String rtf = this.rtf;
+        int length = rtf.length();
+        if( pos >= length ) return;
+        
+        char c = rtf.charAt( pos++ );
+        if( c == '\'' ) {
+            hex();
+            return;
+        }
+        
+        if( ! Character.isLetter( c ) ) {
+            keyword( String.valueOf( c ) );
+            return;
+        }
+        
+        int start = pos - 1;
+        while( pos < length && Character.isLetter( rtf.charAt( pos ) ) ) pos++;
+        if( pos >= length ) return;
+        
+        String word = rtf.substring( start, pos );
+        char delimiter = rtf.charAt( pos++ );
+        
+        if( Character.isDigit( delimiter ) || delimiter == '-' ) {
+            int paramStart = pos - 1;
+            while( pos < length && Character.isDigit( rtf.charAt( pos ) ) ) pos++;
+            if( pos >= length ) return;
+            
+            String param = rtf.substring( paramStart, pos );
+            delimiter = rtf.charAt( pos++ );
+            
+            if( word.equals( "bin" ) ) {
+                binary( param, delimiter );
+                return;
+            }
+            
+            try {
+                keyword( word, Integer.parseInt( param ) );
+            }
+            catch( NumberFormatException ex ) {
+                //ignore the keyword
+            }
+        }
+        else {
+            keyword( word );
+        }
+        
+        //a delimiter other than a space is part of the text
+        if( ! Character.isWhitespace( delimiter ) ) pos--;
+    }
+    
+    //a \'hh escape
+    private void hex() {
+        String rtf = this.rtf;
+        if( pos >= rtf.length() ) return;
+        int high = Character.digit( rtf.charAt( pos++ ), 16 );
+        if( high < 0 ) return;
+        
+        if( pos >= rtf.length() ) return;
+        int low = Character.digit( rtf.charAt( pos++ ), 16 );
+        if( low < 0 ) return;
+        
+        char c = charset[ high * 16 + low ];
+        if( c != 0 ) text( c );
+    }
+    
+    //skip over a \binN blob - it counts as a single character
+    private void binary( String param, char delimiter ) {
+        long count;
+        try {
+            count = Long.parseLong( param );
+        }
+        catch( NumberFormatException ex ) {
+            if( ! Character.isWhitespace( delimiter ) ) pos--;
+            return;
+        }
+        
+        //at least one character is always consumed
+        count = Math.max( count, 1 );
+        if( rtf.length() - pos < count ) {
+            pos = rtf.length();
+            return;
+        }
+        
+        pos += (int) count;
+        if( skipping > 0 ) skipping--;
+        
+        //the Swing reader leaves the parameter as pending text
+        for( int i = 0; i < param.length(); i++ ) text( param.charAt( i ) );
+    }
+    
+    private void text( char c ) {
+        if( skipping > 0 ) {
+            skipping--;
+            return;
+        }
+        
+        Destination dest = destination;
+        if( dest == null ) return;
+        
+        switch( dest.kind ) {
+            case DOCUMENT: {
+                dest.inParagraph = true;
+                append( c );
+                break;
+            }
+            
+            case FONTS: {
+                //the font name runs up to a semicolon
+                if( ! styled || dest.fontName == null ) break;
+                if( c == ';' ) endFont( dest );
+                else dest.fontName.append( c );
+                break;
+            }
+            
+            case COLORS: {
+                if( styled && c == ';' ) dest.colors.add( new Color( component( dest.red ), 
+                                                           component( dest.green ), 
+                                                           component( dest.blue ) ) );
+                break;
+            }
+            
+            default: break;
+        }
+    }
+    
+    //append document text, starting a new run if the style has changed
+    private void append( char c ) {
+        if( styled ) {
+            if( style == null ) style = currentStyle();
+            
+            if( runCount == 0 || runStyles[ runCount - 1 ] != style ) {
+                if( runCount == runStarts.length ) {
+                    runStarts = Arrays.copyOf( runStarts, runCount * 2 );
+                    runStyles = Arrays.copyOf( runStyles, runCount * 2 );
+                }
+                runStarts[ runCount ] = text.length();
+                runStyles[ runCount ] = style;
+                runCount++;
+            }
+        }
+        
+        text.append( c );
+    }
+    
+    //the style for the current attributes
+    private TextStyle currentStyle() {
+        String family = null;
+        if( font >= 0 && fonts != null ) family = fonts.get( font );
+        
+        //as in Swing, the color is black until there is a color table
+        Color foreground = Color.BLACK;
+        if( colors != null ) {
+            foreground = color >= 0 && color < colors.length ? colors[ color ] : null;
+        }
+        
+        return TextStyle.of( family, size, 
+                             ( flags & BOLD      ) != 0, 
+                             ( flags & ITALIC    ) != 0, 
+                             ( flags & UNDERLINE ) != 0, 
+                             foreground );
+    }
+    
+    private void endFont( Destination dest ) {
+        if( fonts == null ) fonts = new HashMap<Integer,String>();
+        fonts.put( dest.fontNumber, dest.fontName.toString() );
+        dest.fontName = null;
+        style = null;
+    }
+    
+    private static int component( int value ) {
+        return Math.max( 0, Math.min( 255, value ) );
+    }
+    
+    private void keyword( String word ) {
+        boolean ignoreIfUnknown = this.ignoreIfUnknown;
+        if( skipping > 0 ) {
+            skipping--;
+            return;
+        }
+        this.ignoreIfUnknown = false;
+        
+        Character c = CHARACTERS.get( word );
+        if( c != null ) {
+            text( c );
+            return;
+        }
+        
+        if( word.equals( "fonttbl" ) ) {
+            setDestination( new Destination( FONTS ) );
+            return;
+        }
+        
+        if( word.equals( "colortbl" ) ) {
+            setDestination( new Destination( COLORS ) );
+            return;
+        }
+        
+        if( DESTINATIONS.contains( word ) ) {
+            setDestination( DISCARD );
+            return;
+        }
+        
+        if( word.equals( "ansi" ) ) { charset = ANSI;  return; }
+        if( word.equals( "mac"  ) ) { charset = MAC;   return; }
+        if( word.equals( "next" ) ) { charset = NEXT;  return; }
+        if( word.equals( "pc"   ) ) { charset = CP437; return; }
+        if( word.equals( "pca"  ) ) { charset = CP850; return; }
+        
+        if( word.equals( "*" ) ) {
+            this.ignoreIfUnknown = true;
+            return;
+        }
+        
+        Destination dest = destination;
+        if( dest == DISCARD ) return;
+        if( dest != null && dest.kind == DOCUMENT ) {
+            if( word.equals( "par" ) || word.equals( "\n" ) || word.equals( "\r" ) ) {
+                endParagraph( dest );
+                return;
+            }
+            
+            if( styled ) attribute( word );
+            if( FORMATTING.contains( word ) ) return;
+        }
+        
+        //the font table understands the font family keywords
+        if( dest != null && dest.kind == FONTS && word.charAt( 0 ) == 'f' ) return;
+        
+        if( ignoreIfUnknown || IGNORED_DESTINATIONS.contains( word ) ) {
+            setDestination( DISCARD );
+        }
+    }
+    
+    private void keyword( String word, int param ) {
+        boolean ignoreIfUnknown = this.ignoreIfUnknown;
+        if( skipping > 0 ) {
+            skipping--;
+            return;
+        }
+        this.ignoreIfUnknown = false;
+        
+        if( word.equals( "uc" ) ) {
+            unicodeSkip = param;
+            return;
+        }
+        
+        if( word.equals( "u" ) ) {
+            text( (char) ( param < 0 ? param + 65536 : param ) );
+            skipping = unicodeSkip;
+            return;
+        }
+        
+        if( word.equals( "rtf" ) ) {
+            setDestination( new Destination( DOCUMENT ) );
+            
+            //a new document starts with plain characters, but keeps the
+            //font and color
+            if( styled ) {
+                size  = 0;
+                flags = 0;
+                style = null;
+            }
+            return;
+        }
+        
+        if( word.contains( "ansicpg" ) ) {
+            charset = LATIN1;
+            return;
+        }
+        
+        Destination dest = destination;
+        if( dest == DISCARD ) return;
+        if( dest != null ) {
+            switch( dest.kind ) {
+                case DOCUMENT: {
+                    if( styled ) attribute( word, param );
+                    if( FORMATTING_PARAMETERS.contains( word ) ) return;
+                    break;
+                }
+                
+                case FONTS: {
+                    if( word.equals( "f" ) ) {
+                        if( styled ) {
+                            dest.fontNumber = param;
+                            dest.fontName   = new StringBuilder();
+                        }
+                        return;
+                    }
+                    break;
+                }
+                
+                case COLORS: {
+                    if( word.equals( "red"   ) ) { dest.red   = param; return; }
+                    if( word.equals( "green" ) ) { dest.green = param; return; }
+                    if( word.equals( "blue"  ) ) { dest.blue  = param; return; }
+                    break;
+                }
+                
+                default: break;
+            }
+        }
+        
+        if( ignoreIfUnknown || word.startsWith( "NeXT" ) || word.equals( "private" ) ) {
+            setDestination( DISCARD );
+        }
+    }
+    
+    //a character attribute keyword within the document
+    private void attribute( String word ) {
+        if( word.equals( "b"      ) ) setFlag( BOLD, true );
+        if( word.equals( "i"      ) ) setFlag( ITALIC, true );
+        if( word.equals( "ul"     ) ) setFlag( UNDERLINE, true );
+        if( word.equals( "ulnone" ) ) setFlag( UNDERLINE, false );
+        
+        if( word.equals( "plain" ) ) {
+            font  = 0;
+            color = 0;
+            size  = 12;
+            flags = 0;
+            style = null;
+        }
+    }
+    
+    //a character attribute keyword with a parameter
+    private void attribute( String word, int param ) {
+        if( word.equals( "b"  ) ) setFlag( BOLD, param != 0 );
+        if( word.equals( "i"  ) ) setFlag( ITALIC, param != 0 );
+        if( word.equals( "ul" ) ) setFlag( UNDERLINE, param != 0 );
+        
+        if( word.equals( "f" ) ) {
+            font  = param;
+            style = null;
+        }
+        
+        if( word.equals( "cf" ) || word.equals( "fc" ) ) {
+            color = param;
+            style = null;
+        }
+        
+        if( word.equals( "fs" ) ) {
+            size  = param / 2;
+            style = null;
+        }
+    }
+    
+    private void setFlag( int flag, boolean on ) {
+        flags = on ? ( flags | flag ) : ( flags & ~flag );
+        style = null;
+    }
+    
+    //switch destination for the rest of the current group
+    private void setDestination( Destination newDestination ) {
+        if( level > 0 && destination != savedDestinations[ level - 1 ] ) {
+            close( destination );
+        }
+        destination = newDestination;
+    }
+    
+    private void close( Destination dest ) {
+        if( dest == null ) return;
+        
+        switch( dest.kind ) {
+            case DOCUMENT: {
+                if( dest.inParagraph ) endParagraph( dest );
+                break;
+            }
+            
+            case FONTS: {
+                if( styled && dest.fontName != null && dest.fontName.length() > 0 ) endFont( dest );
+                break;
+            }
+            
+            case COLORS: {
+                colors = dest.colors.toArray( new Color[ dest.colors.size() ] );
+                style  = null;
+                break;
+            }
+            
+            default: break;
+        }
+    }
+    
+    private void endParagraph( Destination dest ) {
+        if( dest.kind != DOCUMENT ) return;
+        
+        append( '\n' );
+        dest.inParagraph = false;
+    }
+    
+    private void beginGroup() {
+        skipping = 0;
+        
+        if( level == savedDestinations.length ) {
+            savedDestinations = Arrays.copyOf( savedDestinations, level * 2 );
+            savedSkips        = Arrays.copyOf( savedSkips, level * 2 );
+            if( styled ) savedAttributes = Arrays.copyOf( savedAttributes, level * 8 );
+        }
+        
+        savedDestinations[ level ] = destination;
+        savedSkips       [ level ] = unicodeSkip;
+        
+        if( styled ) {
+            int index = level * 4;
+            savedAttributes[ index     ] = font;
+            savedAttributes[ index + 1 ] = size;
+            savedAttributes[ index + 2 ] = color;
+            savedAttributes[ index + 3 ] = flags;
+        }
+        level++;
+    }
+    
+    private void endGroup() {
+        if( level == 0 ) throw new IllegalArgumentException( "Too many close-groups in RTF text" );
+        closeGroup();
+    }
+    
+    private void closeGroup() {
+        skipping = 0;
+        level--;
+        
+        Destination restored = savedDestinations[ level ];
+        savedDestinations[ level ] = null;
+        if( restored != destination ) {
+            close( destination );
+            destination = restored;
+        }
+        unicodeSkip = savedSkips[ level ];
+        
+        if( styled ) {
+            int index = level * 4;
+            font  = savedAttributes[ index     ];
+            size  = savedAttributes[ index + 1 ];
+            color = savedAttributes[ index + 2 ];
+            flags = savedAttributes[ index + 3 ];
+            style = null;
+        }
+    }
+    
+    private static Set<String> words( String words ) {
+        return new HashSet<String>( Arrays.asList( words.split( " " ) ) );
+    }
+    
+    //a character set that is latin-1 below 128
+    private static char[] charset( String high ) {
+        char[] table = new char[ 256 ];
+        for( int i = 0; i < 256; i++ ) {
+            table[i] = high == null ? (char) i : i < 128 ? (char) i : high.charAt( i - 128 );
+        }
+        return table;
+    }
+}
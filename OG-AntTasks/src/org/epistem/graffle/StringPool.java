@@ -0,0 +1,115 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+/**
+ * A bounded pool for de-duplicating plist string values such as "YES", 
+ * class names, font names and repeated RTF text. A pool can be shared by
+ * any number of threads and documents.
+ * 
+ * The pool is a fixed size table where a new string replaces whatever 
+ * was in its slot, so the most recently seen strings are kept. Slots are 
+ * read and written without locking - a lookup may miss because another 
+ * thread just replaced the entry, but it never returns an unequal string.
+ *
+ * @author nickmain
+ */
+public final class StringPool {
+
+    /** Strings longer than this are not pooled */
+    public static final int MAX_LENGTH = 512;
+    
+    private final String[] table;
+    private final int mask;
+    
+    private long hits;
+    private long misses;
+    
+    /**
+     * @param size the number of strings to hold - rounded up to a power of 
+     *             two
+     */
+    public StringPool( int size ) {
+        if( size < 1 ) throw new IllegalArgumentException( "pool size must be positive" );
+        
+        int capacity = Integer.highestOneBit( size );
+        if( capacity < size ) capacity <<= 1;
+        
+        table = new String[ capacity ];
+        mask  = capacity - 1;
+    }
+    
+    /**
+     * Get the pooled string with the given characters, making a new one if 
+     * there is none
+     */
+    public String intern( CharSequence chars ) {
+        int length = chars.length();
+        if( length > MAX_LENGTH ) return chars.toString();
+        
+        //same as String.hashCode()
+        int hash = 0;
+        for( int i = 0; i < length; i++ ) hash = 31 * hash + chars.charAt( i );
+        
+        int index = ( hash ^ ( hash >>> 16 ) ) & mask;
+        String s = table[ index ];
+        if( s != null && s.hashCode() == hash && matches( s, chars ) ) {
+            hits++;
+            return s;
+        }
+        
+        misses++;
+        s = chars.toString();
+        table[ index ] = s;
+        return s;
+    }
+    
+    private static boolean matches( String s, CharSequence chars ) {
+        if( s.length() != chars.length() ) return false;
+        
+        for( int i = 0; i < s.length(); i++ ) {
+            if( s.charAt( i ) != chars.charAt( i ) ) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * The number of lookups that found a pooled string. Counts are not 
+     * exact when the pool is used by several threads.
+     */
+    public long hits() {
+        return hits;
+    }
+    
+    /**
+     * The number of lookups that made a new string
+     */
+    public long misses() {
+        return misses;
+    }
+}
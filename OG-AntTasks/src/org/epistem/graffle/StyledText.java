@@ -0,0 +1,147 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.Arrays;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+/**
+ * Immutable styled text - the text and the start and style of each run.
+ * Runs cover the whole text and adjacent runs have different styles.
+ *
+ * @author nickmain
+ */
+public final class StyledText {
+
+    private final String text;
+    private final int[] runStarts;
+    private final TextStyle[] runStyles;
+    
+    StyledText( String text, int[] runStarts, TextStyle[] runStyles ) {
+        this.text      = text;
+        this.runStarts = runStarts;
+        this.runStyles = runStyles;
+    }
+    
+    /**
+     * Parse RTF text
+     * 
+     * @throws IllegalArgumentException if the RTF groups are unbalanced
+     */
+    public static StyledText fromRTF( String rtf ) {
+        return RTFText.toStyledText( rtf );
+    }
+    
+    /**
+     * Get the plain text
+     */
+    public String text() {
+        return text;
+    }
+    
+    /**
+     * The number of runs
+     */
+    public int runCount() {
+        return runStarts.length;
+    }
+    
+    /**
+     * The offset of the start of a run
+     */
+    public int runStart( int run ) {
+        return runStarts[ run ];
+    }
+    
+    /**
+     * The offset just after the end of a run
+     */
+    public int runEnd( int run ) {
+        return run + 1 < runStarts.length ? runStarts[ run + 1 ] : text.length();
+    }
+    
+    /**
+     * The style of a run
+     */
+    public TextStyle runStyle( int run ) {
+        return runStyles[ run ];
+    }
+    
+    /**
+     * Get the style of the character at the given offset
+     */
+    public TextStyle styleAt( int offset ) {
+        if( offset < 0 || offset >= text.length() ) throw new IndexOutOfBoundsException( "offset " + offset );
+        
+        int run = Arrays.binarySearch( runStarts, offset );
+        if( run < 0 ) run = -run - 2;
+        return runStyles[ run ];
+    }
+    
+    /**
+     * Make a new Swing document with the text and character attributes.
+     * Paragraph attributes are not carried over.
+     */
+    public DefaultStyledDocument toStyledDocument() {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        
+        try {
+            for( int run = 0; run < runStarts.length; run++ ) {
+                doc.insertString( doc.getLength(), 
+                                  text.substring( runStart( run ), runEnd( run ) ), 
+                                  attributes( runStyles[ run ] ) );
+            }
+        }
+        catch( BadLocationException ex ) {
+            throw new RuntimeException( ex );
+        }
+        
+        return doc;
+    }
+    
+    private static SimpleAttributeSet attributes( TextStyle style ) {
+        SimpleAttributeSet attrs = new SimpleAttributeSet();
+        StyleConstants.setBold( attrs, style.isBold() );
+        StyleConstants.setItalic( attrs, style.isItalic() );
+        StyleConstants.setUnderline( attrs, style.isUnderline() );
+        
+        if( style.fontFamily() != null ) StyleConstants.setFontFamily( attrs, style.fontFamily() );
+        if( style.fontSize()   != 0    ) StyleConstants.setFontSize( attrs, style.fontSize() );
+        if( style.color()      != null ) StyleConstants.setForeground( attrs, style.color() );
+        return attrs;
+    }
+    
+    @Override
+    public String toString() {
+        return text;
+    }
+}
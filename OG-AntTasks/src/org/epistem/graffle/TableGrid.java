@@ -0,0 +1,101 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds the row and column layout of a table group from the bounds of
+ * its cells. The x and y coordinates are sorted once as primitives and 
+ * clustered, so coordinates that differ by less than the tolerance fall 
+ * in the same row or column.
+ *
+ * @author nickmain
+ */
+final class TableGrid {
+
+    /** Coordinates closer than this, in points, are in the same row or column */
+    static final double TOLERANCE = 0.5;
+    
+    private TableGrid() {}
+    
+    /**
+     * Lay out cells in a grid
+     * 
+     * @return the cells as [row][column], with null where there is no cell.
+     *         If two cells fall in the same place the later one is used.
+     */
+    static OGGraphic[][] build( List<OGGraphic> cells, double tolerance ) {
+        int count = cells.size();
+        if( count == 0 ) return new OGGraphic[0][];
+        
+        double[] xs = new double[ count ];
+        double[] ys = new double[ count ];
+        for( int i = 0; i < count; i++ ) {
+            double[] bounds = cells.get( i ).packedBounds();
+            xs[i] = bounds[0];
+            ys[i] = bounds[1];
+        }
+        
+        double[] columns = clusters( xs, tolerance );
+        double[] rows    = clusters( ys, tolerance );
+        
+        OGGraphic[][] grid = new OGGraphic[ rows.length ][ columns.length ];
+        for( int i = 0; i < count; i++ ) {
+            grid[ indexOf( rows, ys[i] ) ][ indexOf( columns, xs[i] ) ] = cells.get( i );
+        }
+        
+        return grid;
+    }
+    
+    /**
+     * The start of each cluster of values, in ascending order. A cluster
+     * holds the values within the tolerance of its smallest value.
+     */
+    private static double[] clusters( double[] values, double tolerance ) {
+        double[] sorted = values.clone();
+        Arrays.sort( sorted );
+        
+        int count = 1;
+        for( int i = 1; i < sorted.length; i++ ) {
+            if( sorted[i] - sorted[ count - 1 ] >= tolerance ) sorted[ count++ ] = sorted[i];
+        }
+        
+        return Arrays.copyOf( sorted, count );
+    }
+    
+    //index of the cluster containing a value
+    private static int indexOf( double[] starts, double value ) {
+        int index = Arrays.binarySearch( starts, value );
+        if( index >= 0 ) return index;
+        
+        //the cluster starting below the insertion point
+        return -index - 2;
+    }
+}
@@ -0,0 +1,141 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.graffle;
+
+import java.awt.Color;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The character attributes of a run of styled text. Styles are interned, 
+ * so equal styles are the same instance and can be compared by identity.
+ *
+ * @author nickmain
+ */
+public final class TextStyle {
+
+    private static final ConcurrentMap<TextStyle,TextStyle> STYLES = 
+        new ConcurrentHashMap<TextStyle,TextStyle>();
+    
+    private final String fontFamily;
+    private final int fontSize;
+    private final boolean bold;
+    private final boolean italic;
+    private final boolean underline;
+    private final Color color;
+    
+    private TextStyle( String fontFamily, int fontSize, boolean bold, 
+                       boolean italic, boolean underline, Color color ) {
+        this.fontFamily = fontFamily;
+        this.fontSize   = fontSize;
+        this.bold       = bold;
+        this.italic     = italic;
+        this.underline  = underline;
+        this.color      = color;
+    }
+    
+    /**
+     * Get the interned style with the given attributes
+     */
+    static TextStyle of( String fontFamily, int fontSize, boolean bold, 
+                         boolean italic, boolean underline, Color color ) {
+        TextStyle style = new TextStyle( fontFamily, fontSize, bold, italic, underline, color );
+        TextStyle existing = STYLES.putIfAbsent( style, style );
+        return existing != null ? existing : style;
+    }
+    
+    /**
+     * The font family
+     * @return null if not specified
+     */
+    public String fontFamily() {
+        return fontFamily;
+    }
+
+    /**
+     * The font size in points
+     * @return zero if not specified
+     */
+    public int fontSize() {
+        return fontSize;
+    }
+    
+    public boolean isBold() {
+        return bold;
+    }
+
+    public boolean isItalic() {
+        return italic;
+    }
+
+    public boolean isUnderline() {
+        return underline;
+    }
+
+    /**
+     * The text color
+     * @return null if not specified
+     */
+    public Color color() {
+        return color;
+    }
+    
+    @Override
+    public boolean equals( Object obj ) {
+        if( obj == this ) return true;
+        if( !( obj instanceof TextStyle ) ) return false;
+        
+        TextStyle other = (TextStyle) obj;
+        return fontSize  == other.fontSize
+            && bold      == other.bold
+            && italic    == other.italic
+            && underline == other.underline
+            && ( fontFamily == null ? other.fontFamily == null : fontFamily.equals( other.fontFamily ) )
+            && ( color == null ? other.color == null : color.equals( other.color ) );
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = fontSize;
+        if( bold      ) hash += 1 << 24;
+        if( italic    ) hash += 1 << 25;
+        if( underline ) hash += 1 << 26;
+        if( fontFamily != null ) hash = 31 * hash + fontFamily.hashCode();
+        if( color != null ) hash = 31 * hash + color.hashCode();
+        return hash;
+    }
+    
+    @Override
+    public String toString() {
+        return fontFamily + " " + fontSize 
+             + ( bold ? " bold" : "" ) 
+             + ( italic ? " italic" : "" ) 
+             + ( underline ? " underline" : "" ) 
+             + ( color != null ? " " + color : "" );
+    }
+}
@@ -0,0 +1,96 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream over the remaining bytes of a buffer. The buffer is 
+ * duplicated, so its position is not changed.
+ * 
+ * @author nickmain
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+    private int mark;
+    
+    /**
+     * @param buffer the bytes from the position to the limit are read
+     */
+    public ByteBufferInputStream( ByteBuffer buffer ) {
+        this.buffer = buffer.duplicate();
+        this.mark   = this.buffer.position();
+    }
+    
+    @Override
+    public int read() {
+        if( ! buffer.hasRemaining() ) return -1;
+        return buffer.get() & 0xff;
+    }
+    
+    @Override
+    public int read( byte[] b, int off, int len ) {
+        if( len == 0 ) return 0;
+        if( ! buffer.hasRemaining() ) return -1;
+        
+        len = Math.min( len, buffer.remaining() );
+        buffer.get( b, off, len );
+        return len;
+    }
+    
+    @Override
+    public long skip( long n ) {
+        if( n <= 0 ) return 0;
+        
+        int count = (int) Math.min( n, buffer.remaining() );
+        buffer.position( buffer.position() + count );
+        return count;
+    }
+    
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+    
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+    
+    @Override
+    public synchronized void mark( int readlimit ) {
+        mark = buffer.position();
+    }
+    
+    @Override
+    public synchronized void reset() {
+        buffer.position( mark );
+    }
+}
@@ -0,0 +1,218 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A gzip input stream that inflates on a separate thread so that 
+ * decompression overlaps with the consumer of the stream.
+ * 
+ * The inflater thread fills a bounded ring of reusable buffers which the
+ * reader drains. The stream must be closed to stop the thread early.
+ * 
+ * @author nickmain
+ */
+public class PipelinedGZIPInputStream extends InputStream {
+
+    /** Default size of each buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    
+    /** Default number of buffers */
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+    
+    //a buffer and the number of valid bytes in it
+    private static class Chunk {
+        final byte[] data;
+        int length;
+        
+        Chunk( int size ) { data = new byte[ size ]; }
+    }
+    
+    //marks the end of the inflated data
+    private static final Chunk END = new Chunk( 0 );
+    
+    private final InputStream compressed;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> full;
+    private final Thread inflater;
+    
+    //anything thrown by the inflater, rethrown to the reader at the end
+    private volatile Throwable error;
+    private volatile boolean closed;
+    
+    private Chunk current;
+    private int   position;
+    
+    /**
+     * Uses the default buffer size and count
+     * 
+     * @param compressed the gzipped stream - closed when this stream is
+     */
+    public PipelinedGZIPInputStream( InputStream compressed ) {
+        this( compressed, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT );
+    }
+
+    /**
+     * @param compressed the gzipped stream - closed when this stream is
+     * @param bufferSize the size of each buffer
+     * @param bufferCount the number of buffers
+     */
+    public PipelinedGZIPInputStream( InputStream compressed, final int bufferSize, int bufferCount ) {
+        this.compressed = compressed;
+        
+        free = new ArrayBlockingQueue<Chunk>( bufferCount );
+        full = new ArrayBlockingQueue<Chunk>( bufferCount + 1 );
+        for( int i = 0; i < bufferCount; i++ ) {
+            free.add( new Chunk( bufferSize ) );
+        }
+        
+        inflater = new Thread( "gzip-inflater" ) {
+            @Override public void run() {
+                inflate( bufferSize );
+            }
+        };
+        inflater.setDaemon( true );
+        inflater.start();
+    }
+    
+    //the inflater thread - fill free buffers until the end of the data
+    private void inflate( int bufferSize ) {
+        GZIPInputStream in = null;
+        try {
+            in = new GZIPInputStream( compressed, bufferSize );
+            
+            while( ! closed ) {
+                Chunk chunk = free.take();
+                
+                int length = 0;
+                while( length < chunk.data.length ) {
+                    int count = in.read( chunk.data, length, chunk.data.length - length );
+                    if( count < 0 ) break;
+                    length += count;
+                }
+                
+                chunk.length = length;
+                if( length > 0 ) full.put( chunk );
+                
+                if( length < chunk.data.length ) break;
+            }
+        }
+        catch( InterruptedException ex ) {
+            //closed
+        }
+        catch( Throwable ex ) {
+            error = ex;
+        }
+        finally {
+            //always room for the end marker since there is one more slot
+            //than there are buffers
+            full.offer( END );
+            
+            //release the native inflater
+            if( in != null ) {
+                try { in.close(); } catch( IOException ex ) { /*ignore*/ }
+            }
+        }
+    }
+    
+    //make sure there is a current chunk with unread data
+    //return false at the end of the data
+    private boolean fill() throws IOException {
+        if( closed ) throw new IOException( "stream is closed" );
+        if( current == END ) return end();
+        
+        if( current != null ) {
+            if( position < current.length ) return true;
+            free.offer( current );
+            current = null;
+        }
+        
+        try {
+            current = full.take();
+        }
+        catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        
+        position = 0;
+        
+        if( current == END ) return end();
+        return true;
+    }
+    
+    //at the end of the data - rethrow any inflater failure so that a 
+    //truncated stream is never taken for a complete one
+    private boolean end() throws IOException {
+        Throwable error = this.error;
+        if( error == null ) return false;
+        
+        if( error instanceof IOException      ) throw (IOException) error;
+        if( error instanceof RuntimeException ) throw (RuntimeException) error;
+        if( error instanceof Error            ) throw (Error) error;
+        throw new IOException( error );
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if( ! fill() ) return -1;
+        return current.data[ position++ ] & 0xff;
+    }
+    
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if( len == 0 ) return 0;
+        if( ! fill() ) return -1;
+        
+        int count = Math.min( len, current.length - position );
+        System.arraycopy( current.data, position, b, off, count );
+        position += count;
+        return count;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        if( closed || current == null || current == END ) return 0;
+        return current.length - position;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if( closed ) return;
+        closed = true;
+        
+        inflater.interrupt();
+        compressed.close();
+    }
+}
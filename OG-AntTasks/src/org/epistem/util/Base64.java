@@ -27,6 +27,8 @@
 --------------------------------------------------------------------------------*/
 package org.epistem.util;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -139,16 +141,133 @@ public class Base64
     public static byte[] decode( String base64 )
         throws Exception //if base64 is invalid
     {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        StringReader           in = new StringReader( base64 );
+        Decoder decoder = new Decoder();
+        decoder.decode( base64 );
+        return decoder.toByteArray();
+    }
+    
+    /**
+     * A table driven decoder that accepts the base64 characters in any
+     * number of pieces, so that large values can be decoded as they are 
+     * read. Whitespace is skipped.
+     */
+    public static final class Decoder
+    {
+        private static final int INVALID = -1;
+        private static final int SPACE   = -2;
+        
+        private static final byte[] lookup = new byte[ 128 ];
+        
+        static
+        {
+            Arrays.fill( lookup, (byte) INVALID );
+            for( int i = 0; i < charset.length; i++ ) lookup[ charset[i] ] = (byte) i;
+            for( int c = 0; c < 128; c++ ) 
+            {
+                if( Character.isWhitespace( (char) c ) ) lookup[ c ] = (byte) SPACE;
+            }
+        }
+        
+        private byte[] bytes = new byte[ 256 ];
+        private int count;
+        
+        private int quartet; //bits of the current quartet
+        private int numread; //number of chars in the current quartet
+        private int padAt;   //index of the first padding char in the quartet
+        
+        public Decoder()
+        {
+            reset();
+        }
+        
+        /**
+         * Discard any decoded data and start again
+         */
+        public void reset()
+        {
+            count   = 0;
+            quartet = 0;
+            numread = 0;
+            padAt   = -1;
+        }
+        
+        public void decode( char[] chars, int start, int length ) 
+            throws IOException //if the base64 is invalid
+        {
+            int end = start + length;
+            for( int i = start; i < end; i++ ) add( chars[i] );
+        }
+        
+        public void decode( CharSequence chars ) 
+            throws IOException //if the base64 is invalid
+        {
+            int length = chars.length();
+            for( int i = 0; i < length; i++ ) add( chars.charAt( i ) );
+        }
         
-        decode( in, out );
+        /**
+         * Decode ASCII base64 characters from a byte buffer
+         */
+        public void decode( ByteBuffer buffer, int start, int end ) 
+            throws IOException //if the base64 is invalid
+        {
+            for( int i = start; i < end; i++ ) add( (char) ( buffer.get( i ) & 0xff ) );
+        }
         
-        in.close();
-        out.flush();
-        out.close();
+        private void add( char c ) 
+            throws IOException
+        {
+            int value = c < 128 ? lookup[ c ] : ( Character.isWhitespace( c ) ? SPACE : INVALID );
+            if( value == SPACE ) return;
+            
+            if( value == INVALID )
+            {
+                if( c != paddingChar || numread < 2 )
+                {
+                    reset();
+                    throw new IOException( "Invalid char (" + c + ") in Base64 data" );
+                }
+                
+                if( padAt < 0 ) padAt = numread;
+                value = 0;
+            }
+            
+            quartet = ( quartet << 6 ) | value;
+            if( ++numread < 4 ) return;
+            
+            //--Padding in the third place leaves one byte, in the fourth two
+            int size = padAt < 0 ? 3 : padAt - 1;
+            if( count + size > bytes.length ) bytes = Arrays.copyOf( bytes, bytes.length * 2 );
+            
+            bytes[ count++ ] = (byte) ( quartet >> 16 );
+            if( size > 1 ) bytes[ count++ ] = (byte) ( quartet >> 8 );
+            if( size > 2 ) bytes[ count++ ] = (byte) quartet;
+            
+            quartet = 0;
+            numread = 0;
+            padAt   = -1;
+        }
         
-        return out.toByteArray();
+        /**
+         * Get the decoded bytes and reset the decoder
+         */
+        public byte[] toByteArray()
+            throws IOException //if the input ended part way through a quartet
+        {
+            if( numread != 0 ) 
+            {
+                reset();
+                throw new IOException( "Incomplete character quartet at end of Base64 input" );
+            }
+            
+            byte[] data = Arrays.copyOf( bytes, count );
+            reset();
+            
+            //--Do not hang on to the buffer for a large blob
+            if( bytes.length > 64 * 1024 ) bytes = new byte[ 256 ];
+            
+            return data;
+        }
     }
     
     public static void encode( InputStream in, Writer out )
@@ -0,0 +1,189 @@
+/*--------------------------------------------------------------------------------
+  Copyright (c) 2011, David N. Main
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+    * Neither the name of the <organization> nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+--------------------------------------------------------------------------------*/
+package org.epistem.util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from int keys to objects, without boxing. Entries are held in 
+ * parallel arrays using open addressing with linear probing. Entries can 
+ * be added and replaced but not removed, and null values are not allowed.
+ * 
+ * Not thread-safe.
+ *
+ * @author nickmain
+ */
+public final class IntMap<V> {
+
+    private int[]    keys;
+    private Object[] values; //null for an empty slot
+    private int size;
+    
+    public IntMap() {
+        this( 16 );
+    }
+    
+    /**
+     * @param expected the expected number of entries
+     */
+    public IntMap( int expected ) {
+        int capacity = 8;
+        while( capacity < expected * 2 ) capacity <<= 1;
+        
+        keys   = new int[ capacity ];
+        values = new Object[ capacity ];
+    }
+    
+    /**
+     * Get the value for a key
+     * @return null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get( int key ) {
+        int mask = keys.length - 1;
+        for( int i = slot( key, mask ); values[i] != null; i = ( i + 1 ) & mask ) {
+            if( keys[i] == key ) return (V) values[i];
+        }
+        return null;
+    }
+    
+    /**
+     * Whether there is a value for a key
+     */
+    public boolean containsKey( int key ) {
+        return get( key ) != null;
+    }
+    
+    /**
+     * Set the value for a key
+     * @return the previous value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put( int key, V value ) {
+        if( value == null ) throw new NullPointerException( "null values are not allowed" );
+        
+        int mask = keys.length - 1;
+        int i = slot( key, mask );
+        for( ; values[i] != null; i = ( i + 1 ) & mask ) {
+            if( keys[i] == key ) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        
+        keys  [i] = key;
+        values[i] = value;
+        
+        //keep the table at most half full
+        if( ++size * 2 > keys.length ) grow();
+        return null;
+    }
+    
+    /**
+     * The number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * The keys, in ascending order
+     */
+    public int[] keys() {
+        int[] sorted = new int[ size ];
+        int count = 0;
+        for( int i = 0; i < values.length; i++ ) {
+            if( values[i] != null ) sorted[ count++ ] = keys[i];
+        }
+        
+        Arrays.sort( sorted );
+        return sorted;
+    }
+    
+    /**
+     * A read-only view of the values, in no particular order
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override public int size() { return size; }
+            
+            @Override public Iterator<V> iterator() {
+                return new Iterator<V>() {
+                    private final Object[] slots = values;
+                    private int index = advance( 0 );
+                    
+                    private int advance( int i ) {
+                        while( i < slots.length && slots[i] == null ) i++;
+                        return i;
+                    }
+                    
+                    public boolean hasNext() { return index < slots.length; }
+                    
+                    @SuppressWarnings("unchecked")
+                    public V next() {
+                        if( index >= slots.length ) throw new NoSuchElementException();
+                        V value = (V) slots[ index ];
+                        index = advance( index + 1 );
+                        return value;
+                    }
+                    
+                    public void remove() { throw new UnsupportedOperationException(); }
+                };
+            }
+        };
+    }
+    
+    private void grow() {
+        int[]    oldKeys   = keys;
+        Object[] oldValues = values;
+        
+        keys   = new int[ oldKeys.length * 2 ];
+        values = new Object[ oldKeys.length * 2 ];
+        
+        int mask = keys.length - 1;
+        for( int j = 0; j < oldKeys.length; j++ ) {
+            if( oldValues[j] == null ) continue;
+            
+            int i = slot( oldKeys[j], mask );
+            while( values[i] != null ) i = ( i + 1 ) & mask;
+            keys  [i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+    
+    //spread the bits of sequential ids
+    private static int slot( int key, int mask ) {
+        int h = key * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & mask;
+    }
+}